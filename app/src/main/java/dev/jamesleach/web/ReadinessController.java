@@ -0,0 +1,33 @@
+package dev.jamesleach.web;
+
+import dev.jamesleach.ReadinessCheck;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.stream.Collectors;
+
+/**
+ * /ready endpoint, 503 until every {@link ReadinessCheck} passes.
+ * Unlike /ping this should gate traffic to the app.
+ */
+@RestController
+@RequiredArgsConstructor
+class ReadinessController {
+  private final ObjectProvider<ReadinessCheck> checks;
+
+  @GetMapping("/ready")
+  ResponseEntity<String> ready() {
+    var notReady = checks.orderedStream()
+      .filter(c -> !c.isReady())
+      .map(ReadinessCheck::getName)
+      .collect(Collectors.toList());
+    if (notReady.isEmpty()) {
+      return ResponseEntity.ok("ready");
+    }
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("not ready: " + String.join(", ", notReady));
+  }
+}
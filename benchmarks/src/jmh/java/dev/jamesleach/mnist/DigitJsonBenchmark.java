@@ -0,0 +1,62 @@
+package dev.jamesleach.mnist;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.jamesleach.mnist.DigitClassificationController.DigitClassificationInput;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a /classify-digit request body.
+ * Binding to {@link DigitClassificationInput} is the baseline for the streamed {@link DigitPixels} read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DigitJsonBenchmark {
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private byte[] json;
+
+  @Setup
+  public void setUp() throws IOException {
+    var random = new Random(1234);
+    var pixels = new double[28][28];
+    for (var row : pixels) {
+      for (int l = 0; l < row.length; l++) {
+        row[l] = random.nextInt(256);
+      }
+    }
+    json = objectMapper.writeValueAsString(new DigitClassificationInput(pixels)).getBytes(StandardCharsets.UTF_8);
+  }
+
+
+  @Benchmark
+  @Threads(1)
+  public DigitClassificationInput bind() throws IOException {
+    return objectMapper.readValue(json, DigitClassificationInput.class);
+  }
+
+
+  @Benchmark
+  @Threads(MNistBenchmarkNetworks.MULTI_THREADS)
+  public DigitClassificationInput bindMultiThread() throws IOException {
+    return objectMapper.readValue(json, DigitClassificationInput.class);
+  }
+
+
+  @Benchmark
+  @Threads(1)
+  public DigitPixels stream() throws IOException {
+    return objectMapper.readValue(json, DigitPixels.class);
+  }
+
+
+  @Benchmark
+  @Threads(MNistBenchmarkNetworks.MULTI_THREADS)
+  public DigitPixels streamMultiThread() throws IOException {
+    return objectMapper.readValue(json, DigitPixels.class);
+  }
+}
@@ -0,0 +1,31 @@
+package dev.jamesleach.mnist;
+
+import dev.jamesleach.neural.data.DataShape;
+import dev.jamesleach.neural.net.CommonNetSpecification;
+import dev.jamesleach.neural.net.NetworkSerializer;
+import dev.jamesleach.neural.net.SerializedNetwork;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+
+/**
+ * Untrained copies of the served MNIST network for benchmarks.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class MNistBenchmarkNetworks {
+  static final String NETWORK_ID = "benchmark-network";
+  public static final DataShape DATA_SHAPE = new DataShape(3, 10, 28, 28, 1);
+  public static final int MULTI_THREADS = 4;
+
+
+  static ComputationGraph graph() {
+    var graph = new ComputationGraph(new MNistFeedForward().build(CommonNetSpecification.builder(), DATA_SHAPE));
+    graph.init();
+    return graph;
+  }
+
+
+  static SerializedNetwork serializedNetwork() {
+    return new SerializedNetwork(NETWORK_ID, DATA_SHAPE, new NetworkSerializer().serialize(graph()));
+  }
+}
@@ -0,0 +1,70 @@
+package dev.jamesleach.mnist;
+
+import com.google.common.collect.Lists;
+import dev.jamesleach.neural.data.LabeledDataSet;
+import dev.jamesleach.neural.data.LabeledDataSetCollection;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Loading a generated MNIST-format CSV of the training set's size, by parsing rows into data points
+ * then batching them, and by parsing the memory mapped file straight into batch arrays.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class MNistCsvBenchmark {
+  private static final int ROWS = 60_000;
+  private static final int BATCH_SIZE = 1000;
+
+  private Path csv;
+
+  @Setup
+  public void setUp() throws IOException {
+    csv = Files.createTempFile("mnist-benchmark", ".csv");
+    var random = new Random(1234);
+    try (var writer = Files.newBufferedWriter(csv)) {
+      writer.write("label");
+      for (int i = 1; i <= MNistCsv.HEIGHT * MNistCsv.WIDTH; i++) {
+        writer.write(",pixel" + i);
+      }
+      writer.write('\n');
+      for (int row = 0; row < ROWS; row++) {
+        writer.write(Integer.toString(random.nextInt(MNistCsv.NUM_DIGITS)));
+        for (int i = 0; i < MNistCsv.HEIGHT * MNistCsv.WIDTH; i++) {
+          // Mostly background like the real images
+          writer.write(',');
+          writer.write(Integer.toString(random.nextInt(5) == 0 ? random.nextInt(256) : 0));
+        }
+        writer.write('\n');
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.delete(csv);
+  }
+
+
+  @Benchmark
+  public LabeledDataSetCollection rowsThenBatches() {
+    return new LabeledDataSetCollection(Lists.partition(MNistCsv.readPoints(csv), BATCH_SIZE).stream()
+      .map(LabeledDataSet::new)
+      .collect(Collectors.toList()));
+  }
+
+
+  @Benchmark
+  public LabeledDataSetCollection mappedBatches() {
+    return MNistCsv.readDataSets(csv, BATCH_SIZE);
+  }
+}
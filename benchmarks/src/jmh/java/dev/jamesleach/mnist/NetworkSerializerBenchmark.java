@@ -0,0 +1,54 @@
+package dev.jamesleach.mnist;
+
+import dev.jamesleach.neural.net.NetworkBinary;
+import dev.jamesleach.neural.net.NetworkSerializer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing and deserializing the MNIST network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class NetworkSerializerBenchmark {
+  private final NetworkSerializer serializer = new NetworkSerializer();
+  private ComputationGraph graph;
+  private NetworkBinary serialized;
+
+  @Setup
+  public void setUp() {
+    graph = MNistBenchmarkNetworks.graph();
+    serialized = serializer.serialize(graph);
+  }
+
+
+  @Benchmark
+  @Threads(1)
+  public NetworkBinary serialize() {
+    return serializer.serialize(graph);
+  }
+
+
+  @Benchmark
+  @Threads(MNistBenchmarkNetworks.MULTI_THREADS)
+  public NetworkBinary serializeMultiThread() {
+    return serializer.serialize(graph);
+  }
+
+
+  @Benchmark
+  @Threads(1)
+  public ComputationGraph deserialize() {
+    return serializer.deserialize(serialized);
+  }
+
+
+  @Benchmark
+  @Threads(MNistBenchmarkNetworks.MULTI_THREADS)
+  public ComputationGraph deserializeMultiThread() {
+    return serializer.deserialize(serialized);
+  }
+}
@@ -0,0 +1,91 @@
+package dev.jamesleach.mnist;
+
+import dev.jamesleach.neural.data.ClassificationOutput;
+import dev.jamesleach.neural.data.UnlabeledDataPoint;
+import dev.jamesleach.neural.net.ExampleNetworks;
+import dev.jamesleach.neural.net.NetworkRunnerSpecification;
+import dev.jamesleach.neural.net.NetworkSerializer;
+import dev.jamesleach.neural.net.SavedNetworkRunner;
+import dev.jamesleach.neural.net.SerializedNetwork;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classifying a single point through {@link SavedNetworkRunner}.
+ * Warm runs hit the network cache, cold runs use a fresh runner so include loading and deserializing the network,
+ * and closing it again.
+ * Run on the plain Java dense engine and on DL4J, with and without workspaces.
+ * The gc profiler's alloc.rate shows the heap side, native allocation shows up as time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SavedNetworkRunnerBenchmark {
+  @Param({"true", "false"})
+  private boolean denseEngineEnabled;
+
+  @Param({"true", "false"})
+  private boolean workspacesEnabled;
+
+  private SerializedNetwork network;
+  private UnlabeledDataPoint point;
+  private SavedNetworkRunner warmRunner;
+
+  @Setup
+  public void setUp() {
+    network = MNistBenchmarkNetworks.serializedNetwork();
+    point = ExampleNetworks.randomPoint(MNistBenchmarkNetworks.DATA_SHAPE, new Random(1234));
+    warmRunner = newRunner();
+    warmRunner.runClassification(MNistBenchmarkNetworks.NETWORK_ID, point);
+  }
+
+
+  @Benchmark
+  @Threads(1)
+  public ClassificationOutput warm() {
+    return warmRunner.runClassification(MNistBenchmarkNetworks.NETWORK_ID, point);
+  }
+
+
+  @Benchmark
+  @Threads(MNistBenchmarkNetworks.MULTI_THREADS)
+  public ClassificationOutput warmMultiThread() {
+    return warmRunner.runClassification(MNistBenchmarkNetworks.NETWORK_ID, point);
+  }
+
+
+  @Benchmark
+  @Threads(1)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public ClassificationOutput cold() {
+    try (var runner = newRunner()) {
+      return runner.runClassification(MNistBenchmarkNetworks.NETWORK_ID, point);
+    }
+  }
+
+
+  @Benchmark
+  @Threads(MNistBenchmarkNetworks.MULTI_THREADS)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public ClassificationOutput coldMultiThread() {
+    return cold();
+  }
+
+
+  @TearDown
+  public void tearDown() {
+    warmRunner.close();
+  }
+
+
+  private SavedNetworkRunner newRunner() {
+    return new SavedNetworkRunner(id -> Optional.of(network), new NetworkSerializer(),
+      NetworkRunnerSpecification.builder()
+        .denseEngineEnabled(denseEngineEnabled)
+        .workspacesEnabled(workspacesEnabled)
+        .build());
+  }
+}
@@ -0,0 +1,81 @@
+package dev.jamesleach.mnist;
+
+import dev.jamesleach.neural.data.LabeledDataPoint;
+import dev.jamesleach.neural.data.LabeledDataSet;
+import dev.jamesleach.neural.data.NeuralDataUtils;
+import dev.jamesleach.neural.net.CommonNetSpecification;
+import dev.jamesleach.neural.net.NetworkTrainerBuilder;
+import dev.jamesleach.neural.net.NetworkTrainerSpecification;
+import org.deeplearning4j.datasets.iterator.impl.ListDataSetIterator;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.nd4j.linalg.dataset.DataSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One epoch of training the MNIST network on random data, by number of parallel workers
+ * and batches prefetched per worker (0 to read batches on the training thread).
+ * Scores are samples per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class TrainingBenchmark {
+  private static final int BATCH_SIZE = 64;
+  private static final int BATCHES = 64;
+  private static final int SAMPLES = BATCH_SIZE * BATCHES;
+
+  @Param({"1", "2", "4", "8"})
+  private int workers;
+
+  @Param({"0", "2"})
+  private int prefetchBatches;
+
+  private final NetworkTrainerBuilder trainerBuilder = new NetworkTrainerBuilder();
+  private List<DataSet> batches;
+
+  @Setup
+  public void setUp() {
+    var random = new Random(1234);
+    var shape = MNistBenchmarkNetworks.DATA_SHAPE;
+    batches = new ArrayList<>();
+    for (int b = 0; b < BATCHES; b++) {
+      var points = new ArrayList<LabeledDataPoint>();
+      for (int i = 0; i < BATCH_SIZE; i++) {
+        var data = new double[shape.getHeight()][shape.getLength()][shape.getDepth()];
+        for (double[][] rows : data) {
+          for (double[] row : rows) {
+            row[0] = random.nextDouble();
+          }
+        }
+        points.add(new LabeledDataPoint(data,
+          NeuralDataUtils.toLabelProbabilityArray(random.nextInt(shape.getNumLabels()), shape.getNumLabels())));
+      }
+      batches.add(new LabeledDataSet(points).getDataSet());
+    }
+  }
+
+
+  @Benchmark
+  @OperationsPerInvocation(SAMPLES)
+  public ComputationGraph trainEpoch() {
+    return trainerBuilder.trainer(NetworkTrainerSpecification.builder()
+      .compNetworkConfiguration(
+        new MNistFeedForward().build(CommonNetSpecification.builder(), MNistBenchmarkNetworks.DATA_SHAPE))
+      .trainingData(new ListDataSetIterator<>(batches, BATCH_SIZE))
+      .maxTime(1L)
+      .maxTimeUnit(TimeUnit.HOURS)
+      .maxEpochs(1)
+      .workers(workers)
+      .prefetchBatches(prefetchBatches)
+      .build())
+      .fit()
+      .getBestModel();
+  }
+}
@@ -0,0 +1,78 @@
+package dev.jamesleach.neural.data;
+
+import dev.jamesleach.mnist.MNistBenchmarkNetworks;
+import dev.jamesleach.neural.net.ExampleNetworks;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of a single MNIST sized data point to a network input,
+ * and of a training batch of them to a {@link LabeledDataSet}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NeuralDataBenchmark {
+  private static final DataShape MNIST_SHAPE = MNistBenchmarkNetworks.DATA_SHAPE;
+  private static final int BATCH_SIZE = 1000;
+
+  private UnlabeledDataPoint point;
+  private List<LabeledDataPoint> batch;
+
+  @Setup
+  public void setUp() {
+    var random = new Random(1234);
+    point = ExampleNetworks.randomPoint(MNIST_SHAPE, random);
+    batch = new ArrayList<>();
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      var data = new double[MNIST_SHAPE.getHeight()][MNIST_SHAPE.getLength()][MNIST_SHAPE.getDepth()];
+      for (double[][] rows : data) {
+        for (double[] row : rows) {
+          row[0] = random.nextDouble();
+        }
+      }
+      batch.add(new LabeledDataPoint(data, NeuralDataUtils.toLabelProbabilityArray(i % 10, 10)));
+    }
+  }
+
+
+  @Benchmark
+  @Threads(1)
+  public INDArray toSingleInputArray() {
+    return NeuralDataUtils.toSingleInputArray(point);
+  }
+
+
+  @Benchmark
+  @Threads(MNistBenchmarkNetworks.MULTI_THREADS)
+  public INDArray toSingleInputArrayMultiThread() {
+    return NeuralDataUtils.toSingleInputArray(point);
+  }
+
+
+  @Benchmark
+  @Threads(1)
+  public INDArray inInputArrayRow() {
+    return NeuralDataUtils.inInputArrayRow(MNIST_SHAPE, point::getInputData3d);
+  }
+
+
+  @Benchmark
+  @Threads(MNistBenchmarkNetworks.MULTI_THREADS)
+  public INDArray inInputArrayRowMultiThread() {
+    return NeuralDataUtils.inInputArrayRow(MNIST_SHAPE, point::getInputData3d);
+  }
+
+
+  @Benchmark
+  @Threads(1)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public LabeledDataSet labeledDataSet() {
+    return new LabeledDataSet(batch);
+  }
+}
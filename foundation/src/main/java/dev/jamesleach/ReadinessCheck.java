@@ -0,0 +1,16 @@
+package dev.jamesleach;
+
+/**
+ * Something that must be ready before the app should take traffic.
+ */
+public interface ReadinessCheck {
+   /**
+    * @return short name reported while not ready
+    */
+   String getName();
+
+   /**
+    * @return true once ready
+    */
+   boolean isReady();
+}
@@ -0,0 +1,114 @@
+package dev.jamesleach.mnist;
+
+import dev.jamesleach.neural.data.ClassificationOutput;
+import dev.jamesleach.neural.data.InputBuffer;
+import dev.jamesleach.web.BadRequestException;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import static dev.jamesleach.mnist.DigitPixels.MAX_PIXEL_VALUE;
+import static dev.jamesleach.mnist.DigitPixels.MNIST_DATA_SHAPE;
+
+/**
+ * Compact binary alternative to the JSON request and response formats.
+ * All multi-byte values are big-endian.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+class BinaryDigitFormat {
+  /**
+   * A single image as 784 unsigned bytes, row by row in the same order as the JSON pixels.
+   */
+  static final String IMAGE_VALUE = "application/x-mnist-image";
+  /**
+   * An int32 image count followed by that many images.
+   */
+  static final String IMAGE_BATCH_VALUE = "application/x-mnist-image-batch";
+  /**
+   * An int32 output count followed by, for each output, a uint8 label index,
+   * a uint8 label count and a float32 probability per label.
+   * Clients must read both uint8 values as unsigned, e.g. {@code in.readUnsignedByte()} in Java
+   * or {@code DataView.getUint8} in JavaScript.
+   */
+  static final String CLASSIFICATION_VALUE = "application/x-mnist-classification";
+  static final MediaType CLASSIFICATION = MediaType.valueOf(CLASSIFICATION_VALUE);
+
+  static final int IMAGE_SIZE = MNIST_DATA_SHAPE.getHeight() * MNIST_DATA_SHAPE.getLength();
+  private static final int MAX_UINT8 = 0xFF;
+  private static final ThreadLocal<byte[]> IMAGE_BYTES = ThreadLocal.withInitial(() -> new byte[IMAGE_SIZE]);
+
+
+  /**
+   * Read one image into a row of the buffer.
+   */
+  static void readImage(InputStream in, InputBuffer buffer, int row, String location) throws IOException {
+    var bytes = IMAGE_BYTES.get();
+    int read = in.readNBytes(bytes, 0, IMAGE_SIZE);
+    if (read != IMAGE_SIZE) {
+      throw new BadRequestException("Image " + location + "should be " + IMAGE_SIZE + " bytes but got " + read);
+    }
+    int i = 0;
+    for (int h = 0; h < MNIST_DATA_SHAPE.getHeight(); h++) {
+      for (int l = 0; l < MNIST_DATA_SHAPE.getLength(); l++) {
+        buffer.put(row, h, l, 0, (float) ((bytes[i++] & 0xFF) / MAX_PIXEL_VALUE));
+      }
+    }
+  }
+
+
+  /**
+   * Read the image count at the start of a batch.
+   */
+  static int readImageCount(InputStream in) throws IOException {
+    var bytes = in.readNBytes(Integer.BYTES);
+    if (bytes.length != Integer.BYTES) {
+      throw new BadRequestException("Missing image count");
+    }
+    return (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF);
+  }
+
+
+  /**
+   * Fail if there are any bytes left to read.
+   */
+  static void expectEnd(InputStream in) throws IOException {
+    if (in.read() != -1) {
+      throw new BadRequestException("Unexpected bytes after the last image");
+    }
+  }
+
+
+  /**
+   * Write outputs in the {@link #CLASSIFICATION_VALUE} format.
+   *
+   * @throws IllegalArgumentException if a label index or count does not fit in a uint8
+   */
+  static void writeOutputs(List<ClassificationOutput> outputs, OutputStream out) throws IOException {
+    for (var output : outputs) {
+      int labels = output.getLabelProbabilities().length;
+      if (labels > MAX_UINT8) {
+        throw new IllegalArgumentException("Cannot write " + labels + " labels, the most is " + MAX_UINT8);
+      }
+      if (output.getLabelIndex() < 0 || output.getLabelIndex() >= labels) {
+        throw new IllegalArgumentException("Label index " + output.getLabelIndex() + " is not one of " + labels
+          + " labels");
+      }
+    }
+    var data = new DataOutputStream(out);
+    data.writeInt(outputs.size());
+    for (var output : outputs) {
+      data.writeByte(output.getLabelIndex());
+      data.writeByte(output.getLabelProbabilities().length);
+      for (double probability : output.getLabelProbabilities()) {
+        data.writeFloat((float) probability);
+      }
+    }
+    data.flush();
+  }
+}
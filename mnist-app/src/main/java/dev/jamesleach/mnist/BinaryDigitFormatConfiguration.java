@@ -0,0 +1,21 @@
+package dev.jamesleach.mnist;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Register {@link ClassificationOutputBinaryConverter}.
+ */
+@Configuration
+class BinaryDigitFormatConfiguration implements WebMvcConfigurer {
+  /**
+   * Added after the default converters so JSON stays the default when any response type is accepted.
+   */
+  @Override
+  public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+    converters.add(new ClassificationOutputBinaryConverter());
+  }
+}
@@ -0,0 +1,71 @@
+package dev.jamesleach.mnist;
+
+import dev.jamesleach.neural.data.ClassificationOutput;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * Write a {@link ClassificationOutput} or a list of them in the {@link BinaryDigitFormat#CLASSIFICATION_VALUE} format.
+ */
+class ClassificationOutputBinaryConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+  ClassificationOutputBinaryConverter() {
+    super(BinaryDigitFormat.CLASSIFICATION);
+  }
+
+  @Override
+  protected boolean supports(Class<?> clazz) {
+    return ClassificationOutput.class.isAssignableFrom(clazz);
+  }
+
+  @Override
+  public boolean canRead(Type type, @Nullable Class<?> contextClass, @Nullable MediaType mediaType) {
+    return false;
+  }
+
+  @Override
+  public boolean canRead(Class<?> clazz, @Nullable MediaType mediaType) {
+    return false;
+  }
+
+  @Override
+  public boolean canWrite(@Nullable Type type, Class<?> clazz, @Nullable MediaType mediaType) {
+    if (!canWrite(mediaType)) {
+      return false;
+    }
+    if (supports(clazz)) {
+      return true;
+    }
+    return List.class.isAssignableFrom(clazz)
+      && type instanceof ParameterizedType
+      && ((ParameterizedType) type).getActualTypeArguments()[0] == ClassificationOutput.class;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  protected void writeInternal(Object o, @Nullable Type type, HttpOutputMessage outputMessage) throws IOException {
+    var outputs = o instanceof ClassificationOutput
+      ? List.of((ClassificationOutput) o)
+      : (List<ClassificationOutput>) o;
+    BinaryDigitFormat.writeOutputs(outputs, outputMessage.getBody());
+  }
+
+  @Override
+  protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+    throw new HttpMessageNotReadableException("Reading is not supported", inputMessage);
+  }
+
+  @Override
+  public Object read(Type type, @Nullable Class<?> contextClass, HttpInputMessage inputMessage) {
+    throw new HttpMessageNotReadableException("Reading is not supported", inputMessage);
+  }
+}
@@ -1,87 +1,157 @@
 package dev.jamesleach.mnist;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.jamesleach.neural.data.ClassificationOutput;
-import dev.jamesleach.neural.data.DataShape;
-import dev.jamesleach.neural.data.UnlabeledDataPoint;
+import dev.jamesleach.neural.data.InputBuffer;
+import dev.jamesleach.neural.net.BatchingNetworkRunner;
 import dev.jamesleach.neural.net.SavedNetworkRunner;
 import dev.jamesleach.web.BadRequestException;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
-import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.event.ContextStartedEvent;
-import org.springframework.context.event.EventListener;
-import org.springframework.core.io.ClassPathResource;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static dev.jamesleach.mnist.DigitPixels.MAX_PIXEL_VALUE;
+import static dev.jamesleach.mnist.DigitPixels.MNIST_DATA_SHAPE;
+
 /**
- * /classify-digit endpoint
- * Accept a pixel map, pass through a network and return the network prediction.
+ * /classify-digit and /classify-digits endpoints
+ * Accept one or more pixel maps, pass through a network and return the network predictions.
+ * Pixel maps can be JSON or the compact {@link BinaryDigitFormat}, which can also be requested for responses.
  */
 @RestController
 @Slf4j
 @RequiredArgsConstructor
 class DigitClassificationController {
-  private static final int MAX_PIXEL_VALUE = 255;
-  private static final DataShape MNIST_DATA_SHAPE = new DataShape(3, 9, 28, 28, 1);
+  private static final int MAX_BATCH_SIZE = 64;
 
   @Value("${network-id}")
   private final String networkId;
-  private final ObjectMapper objectMapper;
+  private final BatchingNetworkRunner networkRunner;
   private final SavedNetworkRunner savedNetworkRunner;
 
+  /**
+   * Pixels are validated and normalized as the body is read, see {@link DigitPixelsDeserializer}.
+   */
   @PostMapping("/classify-digit")
-  ClassificationOutput classifyDigit(@RequestBody DigitClassificationInput input) {
+  ClassificationOutput classifyDigit(@RequestBody DigitPixels input) {
     // Validate
-    if (input == null || input.getPixels() == null) {
+    if (input == null) {
       throw new BadRequestException("Null input");
     }
-    if (input.getPixels().length != MNIST_DATA_SHAPE.getHeight()) {
-      throw new BadRequestException("Height must be " + MNIST_DATA_SHAPE.getHeight() + " but got " + input.getPixels().length);
+
+    // Classify
+    return networkRunner.runClassification(networkId, input.getBuffer());
+  }
+
+
+  @PostMapping("/classify-digits")
+  List<ClassificationOutput> classifyDigits(@RequestBody DigitClassificationBatchInput input) {
+    // Validate
+    if (input == null || input.getImages() == null) {
+      throw new BadRequestException("Null input");
+    }
+    if (input.getImages().length == 0) {
+      throw new BadRequestException("No images");
+    }
+    if (input.getImages().length > MAX_BATCH_SIZE) {
+      throw new BadRequestException("At most " + MAX_BATCH_SIZE + " images allowed but got " + input.getImages().length);
     }
 
-    // Add the 3rd dimension
-    double[][][] as3D = new double[MNIST_DATA_SHAPE.getHeight()][MNIST_DATA_SHAPE.getLength()][MNIST_DATA_SHAPE.getDepth()];
-    for (int h = 0; h < MNIST_DATA_SHAPE.getHeight(); h++) {
-      if (input.getPixels()[h].length != MNIST_DATA_SHAPE.getLength()) {
-        throw new BadRequestException("Invalid length at row " + h + " should be " +
-          MNIST_DATA_SHAPE.getLength() + " but got " + input.getPixels()[h].length);
-      }
-      for (int l = 0; l < MNIST_DATA_SHAPE.getLength(); l++) {
-        as3D[h][l] = new double[]{input.getPixels()[h][l] / (double) MAX_PIXEL_VALUE};
+    var buffer = new InputBuffer(MNIST_DATA_SHAPE, input.getImages().length);
+    for (int i = 0; i < input.getImages().length; i++) {
+      if (input.getImages()[i] == null) {
+        throw new BadRequestException("Null input at image " + i);
       }
+      writePixels(input.getImages()[i], buffer, i, "at image " + i + " ");
     }
 
-    // Classify
-    var point = new UnlabeledDataPoint(as3D, MNIST_DATA_SHAPE);
-    return savedNetworkRunner.runClassification(networkId, point);
+    // Classify in a single pass
+    return savedNetworkRunner.runClassificationBatch(networkId, buffer);
   }
 
 
-  @Async
-  @EventListener
-  @SneakyThrows
-  public void handleContextStart(ContextStartedEvent cse) {
-    log.info("Running warmup point through network");
-    var warmupPoint = objectMapper.readValue(
-      new ClassPathResource("warmup-point.json").getInputStream(),
-      DigitClassificationInput.class);
-    classifyDigit(warmupPoint);
+  /**
+   * Single image in the {@link BinaryDigitFormat#IMAGE_VALUE} format.
+   */
+  @PostMapping(value = "/classify-digit", consumes = BinaryDigitFormat.IMAGE_VALUE)
+  ClassificationOutput classifyDigitImage(InputStream body) throws IOException {
+    var buffer = InputBuffer.forCurrentThread(MNIST_DATA_SHAPE);
+    BinaryDigitFormat.readImage(body, buffer, 0, "");
+    BinaryDigitFormat.expectEnd(body);
+
+    return networkRunner.runClassification(networkId, buffer);
+  }
+
+
+  /**
+   * Several images in the {@link BinaryDigitFormat#IMAGE_BATCH_VALUE} format.
+   * The count is checked before any images are read.
+   */
+  @PostMapping(value = "/classify-digits", consumes = BinaryDigitFormat.IMAGE_BATCH_VALUE)
+  List<ClassificationOutput> classifyDigitImages(InputStream body) throws IOException {
+    int count = BinaryDigitFormat.readImageCount(body);
+    if (count < 1) {
+      throw new BadRequestException("No images");
+    }
+    if (count > MAX_BATCH_SIZE) {
+      throw new BadRequestException("At most " + MAX_BATCH_SIZE + " images allowed but got " + count);
+    }
+
+    var buffer = new InputBuffer(MNIST_DATA_SHAPE, count);
+    for (int i = 0; i < count; i++) {
+      BinaryDigitFormat.readImage(body, buffer, i, i + " ");
+    }
+    BinaryDigitFormat.expectEnd(body);
+
+    return savedNetworkRunner.runClassificationBatch(networkId, buffer);
+  }
+
+
+  /**
+   * Validate the pixel map and write the normalized values into a row of the buffer.
+   */
+  private void writePixels(double[][] pixels, InputBuffer buffer, int row, String location) {
+    if (pixels.length != MNIST_DATA_SHAPE.getHeight()) {
+      throw new BadRequestException("Height " + location + "must be " + MNIST_DATA_SHAPE.getHeight() + " but got " + pixels.length);
+    }
+
+    for (int h = 0; h < MNIST_DATA_SHAPE.getHeight(); h++) {
+      if (pixels[h] == null || pixels[h].length != MNIST_DATA_SHAPE.getLength()) {
+        throw new BadRequestException("Invalid length " + location + "at row " + h + " should be " +
+          MNIST_DATA_SHAPE.getLength() + " but got " + (pixels[h] == null ? 0 : pixels[h].length));
+      }
+      for (int l = 0; l < MNIST_DATA_SHAPE.getLength(); l++) {
+        buffer.put(row, h, l, 0, (float) (pixels[h][l] / MAX_PIXEL_VALUE));
+      }
+    }
   }
 
 
   /**
    * JSON input format.
+   * Read by /classify-digit as {@link DigitPixels}.
    */
   @Data
   @RequiredArgsConstructor(onConstructor = @__(@JsonCreator))
   static class DigitClassificationInput {
     private final double[][] pixels;
   }
+
+
+  /**
+   * JSON input format for several images at once.
+   */
+  @Data
+  @RequiredArgsConstructor(onConstructor = @__(@JsonCreator))
+  static class DigitClassificationBatchInput {
+    private final double[][][] images;
+  }
 }
@@ -0,0 +1,23 @@
+package dev.jamesleach.mnist;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import dev.jamesleach.mnist.DigitClassificationController.DigitClassificationInput;
+import dev.jamesleach.neural.data.DataShape;
+import dev.jamesleach.neural.data.InputBuffer;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * /classify-digit input in the {@link DigitClassificationInput} JSON format,
+ * read by {@link DigitPixelsDeserializer} straight into a normalized network input.
+ * The buffer belongs to the thread that deserialized the request.
+ */
+@Data
+@JsonDeserialize(using = DigitPixelsDeserializer.class)
+@Schema(implementation = DigitClassificationInput.class)
+class DigitPixels {
+  static final DataShape MNIST_DATA_SHAPE = new DataShape(3, 9, 28, 28, 1);
+  static final double MAX_PIXEL_VALUE = 255;
+
+  private final InputBuffer buffer;
+}
@@ -0,0 +1,91 @@
+package dev.jamesleach.mnist;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import dev.jamesleach.neural.data.InputBuffer;
+import dev.jamesleach.web.BadRequestException;
+
+import java.io.IOException;
+
+import static dev.jamesleach.mnist.DigitPixels.MAX_PIXEL_VALUE;
+import static dev.jamesleach.mnist.DigitPixels.MNIST_DATA_SHAPE;
+
+/**
+ * Read {"pixels": [[...], ...]} from the token stream into the current thread's {@link InputBuffer}.
+ * Values are normalized as they are read and the row and column counts are validated as they go,
+ * so oversized input is rejected without reading the rest and no intermediate arrays are created.
+ */
+class DigitPixelsDeserializer extends StdDeserializer<DigitPixels> {
+  private static final String PIXELS_FIELD = "pixels";
+  private static final int HEIGHT = MNIST_DATA_SHAPE.getHeight();
+  private static final int LENGTH = MNIST_DATA_SHAPE.getLength();
+
+  DigitPixelsDeserializer() {
+    super(DigitPixels.class);
+  }
+
+  @Override
+  public DigitPixels deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+    var token = p.currentToken() == JsonToken.START_OBJECT ? p.nextToken() : p.currentToken();
+    if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+      return (DigitPixels) ctxt.handleUnexpectedToken(DigitPixels.class, p);
+    }
+
+    InputBuffer buffer = null;
+    for (; token == JsonToken.FIELD_NAME; token = p.nextToken()) {
+      var fieldName = p.getCurrentName();
+      var valueToken = p.nextToken();
+      if (PIXELS_FIELD.equals(fieldName) && valueToken != JsonToken.VALUE_NULL) {
+        buffer = readPixels(p);
+      } else {
+        p.skipChildren();
+      }
+    }
+
+    if (buffer == null) {
+      throw new BadRequestException("Null input");
+    }
+    return new DigitPixels(buffer);
+  }
+
+
+  private InputBuffer readPixels(JsonParser p) throws IOException {
+    if (p.currentToken() != JsonToken.START_ARRAY) {
+      throw new BadRequestException("Pixels must be an array");
+    }
+    var buffer = InputBuffer.forCurrentThread(MNIST_DATA_SHAPE);
+    int h = 0;
+    while (p.nextToken() != JsonToken.END_ARRAY) {
+      if (h == HEIGHT) {
+        throw new BadRequestException("Height must be " + HEIGHT + " but got more than " + HEIGHT);
+      }
+      readRow(p, buffer, h++);
+    }
+    if (h != HEIGHT) {
+      throw new BadRequestException("Height must be " + HEIGHT + " but got " + h);
+    }
+    return buffer;
+  }
+
+
+  private void readRow(JsonParser p, InputBuffer buffer, int h) throws IOException {
+    if (p.currentToken() != JsonToken.START_ARRAY) {
+      throw new BadRequestException("Row " + h + " must be an array");
+    }
+    int l = 0;
+    for (var token = p.nextToken(); token != JsonToken.END_ARRAY; token = p.nextToken()) {
+      if (l == LENGTH) {
+        throw new BadRequestException("Invalid length at row " + h + " should be " + LENGTH + " but got more than " + LENGTH);
+      }
+      if (!token.isNumeric()) {
+        throw new BadRequestException("Invalid pixel at row " + h + " column " + l);
+      }
+      buffer.put(0, h, l++, 0, (float) (p.getDoubleValue() / MAX_PIXEL_VALUE));
+    }
+    if (l != LENGTH) {
+      throw new BadRequestException("Invalid length at row " + h + " should be " + LENGTH + " but got " + l);
+    }
+  }
+}
@@ -0,0 +1,173 @@
+package dev.jamesleach.mnist;
+
+import dev.jamesleach.neural.data.DataShape;
+import dev.jamesleach.neural.data.LabeledDataPoint;
+import dev.jamesleach.neural.data.LabeledDataSet;
+import dev.jamesleach.neural.data.LabeledDataSetCollection;
+import dev.jamesleach.neural.data.NeuralDataUtils;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Parse the MNIST dataset CSV format, a header row then one row per image of label then pixels.
+ * Pixels are in column order, so are transposed into the [height][width] layout of the network input.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+class MNistCsv {
+  static final int HEIGHT = 28;
+  static final int WIDTH = 28;
+  static final int MAX_VALUE = 255;
+  static final int NUM_DIGITS = 10;
+  static final DataShape DATA_SHAPE = new DataShape(3, NUM_DIGITS, WIDTH, HEIGHT, 1);
+
+  private static final int PIXELS = HEIGHT * WIDTH;
+
+
+  /**
+   * Read all rows into data sets of up to batchSize rows, in file order.
+   * <p>
+   * The file is memory mapped and batches are parsed in parallel straight from its bytes into the arrays
+   * backing each data set, so no per-row strings or objects are created.
+   */
+  @SneakyThrows
+  static LabeledDataSetCollection readDataSets(Path csvPath, int batchSize) {
+    try (var channel = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException(csvPath + " is over 2GB");
+      }
+      var bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      // Skip the header row
+      var lineStarts = lineStarts(bytes);
+      int rows = lineStarts.length - 2;
+      int batches = (rows + batchSize - 1) / batchSize;
+
+      // Ordered stream so batches are collected in file order
+      return new LabeledDataSetCollection(IntStream.range(0, batches)
+        .parallel()
+        .mapToObj(b -> readBatch(bytes, lineStarts, 1 + b * batchSize, Math.min(rows, (b + 1) * batchSize) + 1))
+        .collect(Collectors.toList()));
+    }
+  }
+
+
+  /**
+   * Read and parse all rows, in order.
+   */
+  @SneakyThrows
+  static List<LabeledDataPoint> readPoints(Path csvPath) {
+    return Files.readAllLines(csvPath)
+      .stream()
+      // Skip the header row
+      .skip(1)
+      .parallel()
+      .map(MNistCsv::parseRow)
+      .collect(Collectors.toList());
+  }
+
+
+  /**
+   * Lines [fromLine, toLine) into one data set.
+   */
+  private static LabeledDataSet readBatch(ByteBuffer bytes, int[] lineStarts, int fromLine, int toLine) {
+    int rows = toLine - fromLine;
+    var features = new float[rows * PIXELS];
+    var labels = new float[rows * NUM_DIGITS];
+    for (int row = 0; row < rows; row++) {
+      int line = fromLine + row;
+      parseLine(bytes, lineStarts[line], lineStarts[line + 1], line, row, features, labels);
+    }
+    return new LabeledDataSet(DATA_SHAPE,
+      Nd4j.create(features, new long[]{rows, 1, HEIGHT, WIDTH}, 'c'),
+      Nd4j.create(labels, new long[]{rows, NUM_DIGITS}, 'c'));
+  }
+
+  /**
+   * Parse the unsigned integers of one line, a label then pixels, into a row of the batch arrays.
+   */
+  private static void parseLine(ByteBuffer bytes, int start, int end, int line, int row, float[] features, float[] labels) {
+    int cell = 0;
+    int value = 0;
+    boolean hasDigits = false;
+    for (int position = start; position <= end; position++) {
+      // The end of the line ends the last cell
+      byte b = position == end ? (byte) ',' : bytes.get(position);
+      if (b >= '0' && b <= '9') {
+        value = value * 10 + (b - '0');
+        hasDigits = true;
+      } else if (b == ',') {
+        if (!hasDigits) {
+          throw new IllegalArgumentException("Missing value " + cell + " on line " + (line + 1));
+        }
+        if (cell == 0) {
+          if (value >= NUM_DIGITS) {
+            throw new IllegalArgumentException("Invalid label " + value + " on line " + (line + 1));
+          }
+          labels[row * NUM_DIGITS + value] = 1;
+        } else if (cell <= PIXELS) {
+          int pixel = cell - 1;
+          features[row * PIXELS + (pixel % HEIGHT) * WIDTH + pixel / HEIGHT] = (float) (value / (double) MAX_VALUE);
+        }
+        cell++;
+        value = 0;
+        hasDigits = false;
+      } else if (b != '\r' && b != '\n') {
+        throw new IllegalArgumentException("Unexpected character '" + (char) b + "' on line " + (line + 1));
+      }
+    }
+    if (cell != PIXELS + 1) {
+      throw new IllegalArgumentException("Line " + (line + 1) + " should have " + (PIXELS + 1)
+        + " values but got " + cell);
+    }
+  }
+
+  /**
+   * Offsets of the start of each line plus a final entry for the end of the last line.
+   * A trailing newline does not start another line.
+   */
+  private static int[] lineStarts(ByteBuffer bytes) {
+    int size = bytes.limit();
+    var starts = new int[1024];
+    int count = 1;
+    for (int position = 0; position < size; position++) {
+      if (bytes.get(position) == '\n' && position + 1 < size) {
+        if (count == starts.length) {
+          starts = Arrays.copyOf(starts, count * 2);
+        }
+        starts[count++] = position + 1;
+      }
+    }
+    if (count == starts.length) {
+      starts = Arrays.copyOf(starts, count + 1);
+    }
+    starts[count++] = size;
+    return Arrays.copyOf(starts, count);
+  }
+
+
+  /**
+   * Single CSV row to a data point with label.
+   */
+  static LabeledDataPoint parseRow(String l) {
+    String[] parts = l.split(",");
+    int labelValue = Integer.parseInt(parts[0]);
+    double[][][] input = new double[HEIGHT][WIDTH][1];
+    for (int h = 0; h < HEIGHT; h++) {
+      for (int w = 0; w < WIDTH; w++) {
+        input[h][w][0] = Integer.parseInt(parts[1 + (w * WIDTH + h)]) / (double) MAX_VALUE;
+      }
+    }
+    return new LabeledDataPoint(input, NeuralDataUtils.toLabelProbabilityArray(labelValue, NUM_DIGITS));
+  }
+}
@@ -38,7 +38,7 @@ class MNistFeedForward implements NetworkConfigurationBuilder {
           .activation(Activation.RELU)
           .weightInit(WeightInit.XAVIER)
           .dropOut(new GaussianDropout(c.getDropout()))
-          .nOut(200)
+          .nOut(200 * c.getSizeMultiplier())
           .build(),
         "img1")
       .addLayer("output",
@@ -1,26 +1,23 @@
 package dev.jamesleach.mnist;
 
-import com.google.common.collect.Iterators;
-import dev.jamesleach.neural.data.LabeledDataPoint;
-import dev.jamesleach.neural.data.LabeledDataSet;
+import com.google.common.base.Stopwatch;
+import dev.jamesleach.neural.data.FileBackedDataSetIterator;
 import dev.jamesleach.neural.data.LabeledDataSetCollection;
-import dev.jamesleach.neural.data.NeuralDataUtils;
+import dev.jamesleach.neural.data.LabeledDataSetFile;
 import dev.jamesleach.neural.net.*;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
-import java.util.Spliterator;
-import java.util.Spliterators;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 /**
  * Train and save a network using the MNIST dataset.
@@ -29,90 +26,136 @@ import java.util.stream.StreamSupport;
 @RequiredArgsConstructor
 @Slf4j
 class MNistNetworkFactory {
-  private static final int HEIGHT = 28;
-  private static final int WIDTH = 28;
-  private static final int MAX_VALUE = 255;
-  private static final int NUM_DIGITS = 10;
+  private static final int BATCH_SIZE = 1000;
+  private static final int PREFETCH_BATCHES = 4;
+  private static final long SEED = 1234;
 
   private final NetworkSaver saver;
   private final NetworkLoader loader;
   private final NetworkSerializer serializer;
   private final NetworkTrainerBuilder trainerBuilder;
+  private final HyperparameterSearch hyperparameterSearch;
+  // Blank to keep parsed data next to each CSV
+  @Value("${mnist.dataset-cache-dir:}")
+  private final String datasetCacheDir;
+  // Model replicas trained in parallel, 1 to train on a single thread
+  @Value("${mnist.training-workers:1}")
+  private final int trainingWorkers;
+  // Each network's checkpoints go in a directory of that name
+  @Value("${mnist.checkpoint-dir:./checkpoints}")
+  private final String checkpointDir;
+  // Older checkpoints of a network are deleted
+  @Value("${mnist.checkpoints-kept:5}")
+  private final int checkpointsKept;
 
+  @SneakyThrows
   void createNetwork(String networkId, Duration timeToSpend, Path trainingDataCsv, Path testingDataCsv) {
-    // Parse training data
-    var trainingData = readDataFromCsv(trainingDataCsv);
-
-    // Define network
-    var netConfig = new MNistFeedForward().build(
-      // Use default learning rate and dropout
-      CommonNetSpecification.builder(),
-      trainingData.getDataShape()
-    );
-
-    Consumer<ComputationGraph> save = n -> saver.save(
-      new SerializedNetwork(networkId, trainingData.getDataShape(),
-        serializer.serialize(n)));
-
-    // Define network training regime
-    var trainer = trainerBuilder.trainer(
-      NetworkTrainerSpecification.builder()
-        .initialModel(loader.load(networkId).map(n -> serializer.deserialize(n.getNetworkBinaryBase64())).orElse(null))
-        .compNetworkConfiguration(netConfig)
-        .trainingData(trainingData.toDataSetIterator())
-        .maxTimeUnit(TimeUnit.SECONDS)
-        .maxTime(timeToSpend.getSeconds())
-        .bestModelSaver(save)
-        .build());
-
-    // Train
-    log.info("Spending {} seconds on training", timeToSpend.getSeconds());
-    var net = trainer.fit().getBestModel();
-
-    // Evaluate
-    log.info(net.evaluate(trainingData.toDataSetIterator()).toString());
-    log.info(net.evaluate(readDataFromCsv(testingDataCsv).toDataSetIterator()).toString());
-
-    save.accept(net);
+    // Parse training data once, then read it from disk a few batches at a time
+    try (var trainingData = new FileBackedDataSetIterator(datasetFile(trainingDataCsv), PREFETCH_BATCHES, true, SEED);
+         var testingData = new FileBackedDataSetIterator(datasetFile(testingDataCsv), PREFETCH_BATCHES, false, SEED)) {
+
+      // Define network
+      var netConfig = new MNistFeedForward().build(
+        // Use default learning rate and dropout
+        CommonNetSpecification.builder(),
+        trainingData.getDataShape()
+      );
+
+      Consumer<ComputationGraph> save = n -> saver.save(
+        new SerializedNetwork(networkId, trainingData.getDataShape(),
+          serializer.serialize(n)));
+      // Checkpoint each new best model, the configuration is only written once per configuration
+      var checkpoints = new NetworkCheckpointStore(Paths.get(checkpointDir).resolve(networkId), true,
+        checkpointsKept);
+
+      // Define network training regime
+      var trainer = trainerBuilder.trainer(
+        NetworkTrainerSpecification.builder()
+          .initialModel(loader.load(networkId).map(this::deserialize).orElse(null))
+          .compNetworkConfiguration(netConfig)
+          .trainingData(trainingData)
+          .maxTimeUnit(TimeUnit.SECONDS)
+          .maxTime(timeToSpend.getSeconds())
+          .workers(trainingWorkers)
+          .bestModelSaver(n -> checkpoint(checkpoints, n))
+          .build());
+
+      // Train
+      log.info("Spending {} seconds on training", timeToSpend.getSeconds());
+      var net = trainer.fit().getBestModel();
+
+      // Evaluate
+      trainingData.reset();
+      log.info(net.evaluate(trainingData).toString());
+      log.info(net.evaluate(testingData).toString());
+
+      save.accept(net);
+    }
   }
 
 
   /**
-   * Read, parse and batch all CSV lines.
+   * Search hyper-parameters with successive halving, training on the parsed data held in memory,
+   * and save the most accurate network.
    */
+  void searchHyperparameters(String networkId, Duration timeBudget, Path trainingDataCsv, Path testingDataCsv) {
+    hyperparameterSearch.searchAndSave(networkId, HyperparameterSearchSpecification.builder()
+      .networkConfigurationBuilder(new MNistFeedForward())
+      .trainingData(loadDataSets(trainingDataCsv))
+      .evaluationData(loadDataSets(testingDataCsv))
+      .strategy(HyperparameterSearchSpecification.Strategy.SUCCESSIVE_HALVING)
+      .timeBudget(timeBudget)
+      .build());
+  }
+
+  private LabeledDataSetCollection loadDataSets(Path csvPath) {
+    return LabeledDataSetFile.read(datasetFile(csvPath), stamp(csvPath))
+      .orElseThrow(() -> new IllegalStateException("Could not read batches of " + csvPath));
+  }
+
+  private ComputationGraph deserialize(SerializedNetwork network) {
+    try {
+      return serializer.deserialize(network.getNetworkBinary());
+    } finally {
+      network.getNetworkBinary().release();
+    }
+  }
+
   @SneakyThrows
-  private LabeledDataSetCollection readDataFromCsv(Path csvPath) {
-    log.info("Loading csv data...");
-    return new LabeledDataSetCollection(
-      StreamSupport.stream(Spliterators.spliteratorUnknownSize(
-        Iterators.partition(
-          Files.readAllLines(csvPath)
-            .stream()
-            // Skip the header row
-            .skip(1)
-            .parallel()
-            // Parse
-            .map(this::csvRowToDataPoint)
-            // Chunk into batches
-            .iterator(), 1000), Spliterator.NONNULL), false)
-        // Batch -> DataSet
-        .map(LabeledDataSet::new)
-        .collect(Collectors.toList()));
+  private void checkpoint(NetworkCheckpointStore checkpoints, ComputationGraph net) {
+    checkpoints.save(net);
   }
 
 
   /**
-   * Single CSV row to a data point with label.
+   * Parse and batch all CSV lines into a data set file, unless done by an earlier run and the CSV is unchanged.
+   *
+   * @return the data set file
    */
-  private LabeledDataPoint csvRowToDataPoint(String l) {
-    String[] parts = l.split(",");
-    int labelValue = Integer.parseInt(parts[0]);
-    double[][][] input = new double[HEIGHT][WIDTH][1];
-    for (int h = 0; h < HEIGHT; h++) {
-      for (int w = 0; w < WIDTH; w++) {
-        input[h][w][0] = Integer.parseInt(parts[1 + (w * WIDTH + h)]) / (double) MAX_VALUE;
-      }
+  @SneakyThrows
+  private Path datasetFile(Path csvPath) {
+    var name = csvPath.getFileName() + ".batches";
+    var file = datasetCacheDir.isBlank() ? csvPath.resolveSibling(name) : Paths.get(datasetCacheDir).resolve(name);
+    var stamp = stamp(csvPath);
+    if (LabeledDataSetFile.isCurrent(file, stamp)) {
+      log.info("Using batches of {} parsed earlier in {}", csvPath, file);
+      return file;
     }
-    return new LabeledDataPoint(input, NeuralDataUtils.toLabelProbabilityArray(labelValue, NUM_DIGITS));
+
+    log.info("Loading csv data from {}...", csvPath);
+    var timer = Stopwatch.createStarted();
+    var data = MNistCsv.readDataSets(csvPath, BATCH_SIZE);
+    LabeledDataSetFile.write(file, stamp, data);
+    log.info("Parsed {} batches into {} in {}", data.getDataSets().size(), file, timer);
+    return file;
+  }
+
+  /**
+   * Changes if the file is replaced or edited, or batched differently.
+   */
+  @SneakyThrows
+  private String stamp(Path csvPath) {
+    return csvPath.toAbsolutePath() + ":" + Files.size(csvPath) + ":"
+      + Files.getLastModifiedTime(csvPath).toMillis() + ":" + BATCH_SIZE;
   }
 }
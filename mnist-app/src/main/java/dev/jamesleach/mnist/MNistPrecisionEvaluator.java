@@ -0,0 +1,155 @@
+package dev.jamesleach.mnist;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import dev.jamesleach.neural.data.InputBuffer;
+import dev.jamesleach.neural.data.LabeledDataPoint;
+import dev.jamesleach.neural.data.NeuralDataUtils;
+import dev.jamesleach.neural.net.NetworkLoader;
+import dev.jamesleach.neural.net.NetworkRunnerSpecification;
+import dev.jamesleach.neural.net.NetworkSerializer;
+import dev.jamesleach.neural.net.SavedNetworkRunner;
+import dev.jamesleach.neural.net.SerializedNetwork;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compare reduced precision variants of a saved network with the network as saved,
+ * for accuracy on labeled MNIST data, batch latency and estimated memory.
+ * Every variant runs on DL4J so only the precision differs.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+class MNistPrecisionEvaluator {
+  static final List<PrecisionVariant> VARIANTS = List.of(
+    new PrecisionVariant("saved", null, false),
+    new PrecisionVariant("float", DataType.FLOAT, false),
+    new PrecisionVariant("half", DataType.HALF, false),
+    new PrecisionVariant("int8 weights", null, true),
+    new PrecisionVariant("half, int8 weights", DataType.HALF, true));
+
+  private static final int BATCH_SIZE = 64;
+  private static final int TIMED_PASSES = 5;
+
+  private final NetworkLoader loader;
+  private final NetworkSerializer serializer;
+
+
+  /**
+   * Evaluate each of {@link #VARIANTS}, the first being the network as saved.
+   */
+  List<PrecisionResult> evaluate(String networkId, Path testingDataCsv) {
+    var network = loader.load(networkId)
+      .orElseThrow(() -> new IllegalStateException("No network found for id '" + networkId + "'"));
+    var points = MNistCsv.readPoints(testingDataCsv);
+    var labels = points.stream()
+      .mapToInt(p -> NeuralDataUtils.highestProbabilityLabelIndex(p.getLabels()))
+      .toArray();
+    var batches = Lists.partition(points, BATCH_SIZE).stream()
+      .map(this::toInputBuffer)
+      .collect(Collectors.toList());
+
+    List<PrecisionResult> results;
+    try {
+      // Each variant's runner reads the network again, so only the loaded network is released
+      var unreleased = new SerializedNetwork(network.getId(), network.getDataShape(),
+        network.getNetworkBinary()::openStream);
+      results = VARIANTS.stream()
+        .map(variant -> evaluate(unreleased, variant, batches, labels))
+        .collect(Collectors.toList());
+    } finally {
+      network.getNetworkBinary().release();
+    }
+
+    var saved = results.get(0);
+    log.info("Network '{}' on {} rows, {} rows per batch:", networkId, labels.length, BATCH_SIZE);
+    for (var result : results) {
+      log.info("  {}: accuracy {} ({}), {}µs per batch ({}x), ~{} bytes ({}x)",
+        result.getName(),
+        String.format("%.4f", result.getAccuracy()),
+        String.format("%+.4f", result.getAccuracy() - saved.getAccuracy()),
+        String.format("%.0f", result.getMicrosPerBatch()),
+        String.format("%.2f", saved.getMicrosPerBatch() / result.getMicrosPerBatch()),
+        result.getEstimatedBytes(),
+        String.format("%.2f", result.getEstimatedBytes() / (double) saved.getEstimatedBytes()));
+    }
+    return results;
+  }
+
+  private PrecisionResult evaluate(SerializedNetwork network,
+                                   PrecisionVariant variant,
+                                   List<InputBuffer> batches,
+                                   int[] labels) {
+    var runner = new SavedNetworkRunner(id -> Optional.of(network), serializer, NetworkRunnerSpecification.builder()
+      .replicasPerNetwork(1)
+      .refreshInterval(Duration.ZERO)
+      .inferenceDataType(variant.getDataType())
+      .quantizeInt8(variant.isQuantizeInt8())
+      .denseEngineEnabled(false)
+      .build());
+
+    // The accuracy pass also warms up the network
+    int row = 0;
+    int correct = 0;
+    for (var batch : batches) {
+      for (var output : runner.runClassificationBatch(network.getId(), batch)) {
+        if (output.getLabelIndex() == labels[row++]) {
+          correct++;
+        }
+      }
+    }
+
+    var timer = Stopwatch.createStarted();
+    for (int i = 0; i < TIMED_PASSES; i++) {
+      for (var batch : batches) {
+        runner.runClassificationBatch(network.getId(), batch);
+      }
+    }
+    double microsPerBatch = timer.elapsed(TimeUnit.MICROSECONDS) / (double) (TIMED_PASSES * batches.size());
+
+    return new PrecisionResult(
+      variant.getName(),
+      correct / (double) labels.length,
+      microsPerBatch,
+      runner.getCacheStats().getEstimatedBytes());
+  }
+
+  private InputBuffer toInputBuffer(List<LabeledDataPoint> batch) {
+    var buffer = new InputBuffer(batch.get(0).getDataShape(), batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      buffer.putRow(i, batch.get(i));
+    }
+    return buffer;
+  }
+
+
+  /**
+   * Precision options as applied by {@link NetworkRunnerSpecification}.
+   */
+  @Data
+  static class PrecisionVariant {
+    private final String name;
+    private final DataType dataType;
+    private final boolean quantizeInt8;
+  }
+
+
+  @Data
+  static class PrecisionResult {
+    private final String name;
+    private final double accuracy;
+    private final double microsPerBatch;
+    private final long estimatedBytes;
+  }
+}
@@ -0,0 +1,21 @@
+package dev.jamesleach.mnist;
+
+import dev.jamesleach.neural.net.NetworkCacheStats;
+import dev.jamesleach.neural.net.SavedNetworkRunner;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * /network-cache-stats endpoint for monitoring network loading.
+ */
+@RestController
+@RequiredArgsConstructor
+class NetworkCacheStatsController {
+  private final SavedNetworkRunner savedNetworkRunner;
+
+  @GetMapping("/network-cache-stats")
+  NetworkCacheStats networkCacheStats() {
+    return savedNetworkRunner.getCacheStats();
+  }
+}
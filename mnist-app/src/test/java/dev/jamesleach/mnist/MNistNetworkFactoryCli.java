@@ -13,12 +13,19 @@ import java.time.temporal.ChronoUnit;
 
 /**
  * Run {@link MNistNetworkFactory} as a command line application.
+ * With the argument "evaluate-precision" run {@link MNistPrecisionEvaluator} on the saved network instead,
+ * or with "search-hyperparameters" search for the best hyper-parameters and save the network they train.
  */
 @Profile("mnist-cli")
 @SpringBootApplication
 @RequiredArgsConstructor
 public class MNistNetworkFactoryCli implements CommandLineRunner {
+  private static final String NETWORK_ID = "feedforward-current";
+  private static final String TRAINING_DATA_CSV = "/home/jim/source/altcoin/neural/mnist_train.csv";
+  private static final String TESTING_DATA_CSV = "/home/jim/source/altcoin/neural/mnist_test.csv";
+
   private final MNistNetworkFactory factory;
+  private final MNistPrecisionEvaluator precisionEvaluator;
 
   /**
    * Run {@link MNistNetworkFactory} with no web context.
@@ -32,10 +39,22 @@ public class MNistNetworkFactoryCli implements CommandLineRunner {
 
   @Override
   public void run(String... args) {
+    if (args.length > 0 && args[0].equals("evaluate-precision")) {
+      precisionEvaluator.evaluate(NETWORK_ID, Paths.get(TESTING_DATA_CSV));
+      return;
+    }
+    if (args.length > 0 && args[0].equals("search-hyperparameters")) {
+      factory.searchHyperparameters(
+        NETWORK_ID,
+        Duration.of(20, ChronoUnit.MINUTES),
+        Paths.get(TRAINING_DATA_CSV),
+        Paths.get(TESTING_DATA_CSV));
+      return;
+    }
     factory.createNetwork(
-      "feedforward-current",
+      NETWORK_ID,
       Duration.of(20, ChronoUnit.MINUTES),
-      Paths.get("/home/jim/source/altcoin/neural/mnist_train.csv"),
-      Paths.get("/home/jim/source/altcoin/neural/mnist_test.csv"));
+      Paths.get(TRAINING_DATA_CSV),
+      Paths.get(TESTING_DATA_CSV));
   }
 }
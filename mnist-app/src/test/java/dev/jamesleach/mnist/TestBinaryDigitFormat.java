@@ -0,0 +1,41 @@
+package dev.jamesleach.mnist;
+
+import dev.jamesleach.neural.data.ClassificationOutput;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestBinaryDigitFormat {
+  @Test
+  void testOutputsWritten() throws Exception {
+    var out = new ByteArrayOutputStream();
+    BinaryDigitFormat.writeOutputs(List.of(new ClassificationOutput(new double[]{0.25, 0.75}, 1)), out);
+
+    var in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+    assertEquals(1, in.readInt());
+    assertEquals(1, in.readUnsignedByte());
+    assertEquals(2, in.readUnsignedByte());
+    assertEquals(0.25f, in.readFloat());
+    assertEquals(0.75f, in.readFloat());
+    assertEquals(-1, in.read());
+  }
+
+
+  @Test
+  void testOutOfRangeRejected() {
+    var out = new ByteArrayOutputStream();
+
+    var noPrediction = assertThrows(IllegalArgumentException.class, () ->
+      BinaryDigitFormat.writeOutputs(List.of(new ClassificationOutput(new double[10], -1)), out));
+    assertEquals("Label index -1 is not one of 10 labels", noPrediction.getMessage());
+    var tooManyLabels = assertThrows(IllegalArgumentException.class, () ->
+      BinaryDigitFormat.writeOutputs(List.of(new ClassificationOutput(new double[256], 0)), out));
+    assertEquals("Cannot write 256 labels, the most is 255", tooManyLabels.getMessage());
+    assertEquals(0, out.size());
+  }
+}
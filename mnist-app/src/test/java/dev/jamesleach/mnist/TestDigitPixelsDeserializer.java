@@ -0,0 +1,69 @@
+package dev.jamesleach.mnist;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.jamesleach.mnist.DigitClassificationController.DigitClassificationInput;
+import dev.jamesleach.neural.data.InputBuffer;
+import dev.jamesleach.web.BadRequestException;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+
+import static dev.jamesleach.mnist.DigitPixels.MNIST_DATA_SHAPE;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compare {@link DigitPixelsDeserializer} with binding to {@link DigitClassificationInput}.
+ */
+class TestDigitPixelsDeserializer {
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  void testSameValuesAsBinding() throws Exception {
+    var json = Files.readString(localResourcesPath("test-input-five.json"));
+    var bound = objectMapper.readValue(json, DigitClassificationInput.class);
+    var streamed = objectMapper.readValue(json, DigitPixels.class);
+
+    assertSame(InputBuffer.forCurrentThread(MNIST_DATA_SHAPE), streamed.getBuffer());
+    for (int h = 0; h < 28; h++) {
+      for (int l = 0; l < 28; l++) {
+        assertEquals(bound.getPixels()[h][l] / 255, streamed.getBuffer().getValues()[h * 28 + l], 1e-6);
+      }
+    }
+
+    // Unknown fields are skipped
+    var withExtra = objectMapper.readValue("{\"other\": [1, {\"a\": 2}], " + json.substring(1), DigitPixels.class);
+    assertArrayEquals(streamed.getBuffer().getValues(), withExtra.getBuffer().getValues());
+  }
+
+
+  @Test
+  void testInvalidInputs() {
+    assertBadRequest("{}", "400 Null input");
+    assertBadRequest("{\"pixels\": null}", "400 Null input");
+    assertBadRequest("{\"pixels\": 1}", "400 Pixels must be an array");
+    assertBadRequest(pixelsJson(new double[27][28]), "400 Height must be 28 but got 27");
+    assertBadRequest(pixelsJson(new double[29][28]), "400 Height must be 28 but got more than 28");
+    assertBadRequest(pixelsJson(new double[28][27]), "400 Invalid length at row 0 should be 28 but got 27");
+    assertBadRequest(pixelsJson(new double[28][29]), "400 Invalid length at row 0 should be 28 but got more than 28");
+    assertBadRequest("{\"pixels\": [[\"a\"]]}", "400 Invalid pixel at row 0 column 0");
+  }
+
+  private void assertBadRequest(String json, String message) {
+    var exception = assertThrows(BadRequestException.class, () -> objectMapper.readValue(json, DigitPixels.class));
+    assertEquals(message, exception.getMessage());
+  }
+
+  @SneakyThrows
+  private String pixelsJson(double[][] pixels) {
+    return objectMapper.writeValueAsString(new DigitClassificationInput(pixels));
+  }
+
+  @SneakyThrows
+  private Path localResourcesPath(String fileName) {
+    return Paths.get(Objects.requireNonNull(getClass().getClassLoader().getResource(fileName)).toURI());
+  }
+}
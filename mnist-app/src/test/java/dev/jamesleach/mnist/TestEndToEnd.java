@@ -1,6 +1,7 @@
 package dev.jamesleach.mnist;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.jamesleach.mnist.DigitClassificationController.DigitClassificationBatchInput;
 import dev.jamesleach.mnist.DigitClassificationController.DigitClassificationInput;
 import dev.jamesleach.neural.data.ClassificationOutput;
 import dev.jamesleach.neural.net.NetworkLoader;
@@ -12,10 +13,12 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
@@ -34,7 +37,9 @@ import static org.junit.jupiter.api.Assertions.*;
 @ActiveProfiles("test")
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @RequiredArgsConstructor(onConstructor = @__(@Autowired))
-@TestPropertySource(properties = "network-id=test-network-id")
+// The network is trained by the test so cannot be preloaded
+@TestPropertySource(properties = {"network-id=test-network-id", "network-preload.ids=",
+  "mnist.checkpoint-dir=build/checkpoints"})
 @AutoConfigureWebTestClient
 @Slf4j
 class TestEndToEnd {
@@ -42,6 +47,7 @@ class TestEndToEnd {
 
   private final ObjectMapper objectMapper;
   private final MNistNetworkFactory mNistNetworkFactory;
+  private final MNistPrecisionEvaluator precisionEvaluator;
   private final NetworkLoader networkLoader;
   private final WebTestClient webTestClient;
 
@@ -59,7 +65,7 @@ class TestEndToEnd {
     // Verify created network
     var savedNetwork = networkLoader.load(TEST_NETWORK_ID).orElse(null);
     assertNotNull(savedNetwork);
-    assertNotNull(savedNetwork.getNetworkBinaryBase64());
+    assertNotNull(savedNetwork.getNetworkBinary());
     assertEquals(TEST_NETWORK_ID, savedNetwork.getId());
     assertEquals(1, savedNetwork.getDataShape().getDepth());
     assertEquals(28, savedNetwork.getDataShape().getLength());
@@ -102,6 +108,75 @@ class TestEndToEnd {
     assertNotNull(response);
     assertEquals(1, response.getLabelIndex());
     assertTrue(response.getLabelProbabilities()[1] > 0.5);
+
+    // Both at once
+    var batchResponse = webTestClient
+      .post()
+      .uri("/classify-digits")
+      .bodyValue(new DigitClassificationBatchInput(new double[][][]{inputFive.getPixels(), inputOne.getPixels()}))
+      .exchange()
+      .expectStatus().isOk()
+      .expectBodyList(ClassificationOutput.class)
+      .returnResult()
+      .getResponseBody();
+
+    assertNotNull(batchResponse);
+    assertEquals(2, batchResponse.size());
+    assertEquals(5, batchResponse.get(0).getLabelIndex());
+    assertEquals(1, batchResponse.get(1).getLabelIndex());
+
+    // Binary image with a JSON response
+    response = webTestClient
+      .post()
+      .uri("/classify-digit")
+      .contentType(MediaType.valueOf(BinaryDigitFormat.IMAGE_VALUE))
+      .bodyValue(toImageBytes(inputFive.getPixels()))
+      .exchange()
+      .expectStatus().isOk()
+      .expectBody(ClassificationOutput.class)
+      .returnResult()
+      .getResponseBody();
+
+    assertNotNull(response);
+    assertEquals(5, response.getLabelIndex());
+
+    // Binary batch with a binary response
+    var images = ByteBuffer.allocate(Integer.BYTES + 2 * BinaryDigitFormat.IMAGE_SIZE)
+      .putInt(2)
+      .put(toImageBytes(inputFive.getPixels()))
+      .put(toImageBytes(inputOne.getPixels()));
+    var binaryResponse = webTestClient
+      .post()
+      .uri("/classify-digits")
+      .contentType(MediaType.valueOf(BinaryDigitFormat.IMAGE_BATCH_VALUE))
+      .accept(BinaryDigitFormat.CLASSIFICATION)
+      .bodyValue(images.array())
+      .exchange()
+      .expectStatus().isOk()
+      .expectHeader().contentType(BinaryDigitFormat.CLASSIFICATION)
+      .expectBody(byte[].class)
+      .returnResult()
+      .getResponseBody();
+
+    assertNotNull(binaryResponse);
+    var outputs = ByteBuffer.wrap(binaryResponse);
+    assertEquals(2, outputs.getInt());
+    for (var expected : batchResponse) {
+      assertEquals(expected.getLabelIndex(), outputs.get());
+      assertEquals(10, outputs.get());
+      for (int i = 0; i < 10; i++) {
+        assertEquals(expected.getLabelProbabilities()[i], outputs.getFloat(), 1e-5);
+      }
+    }
+    assertFalse(outputs.hasRemaining());
+
+    // Reduced precision variants of the trained network
+    var precisionResults = precisionEvaluator.evaluate(TEST_NETWORK_ID, localResourcesPath("./mnist-ten-rows-test.csv"));
+    assertEquals(MNistPrecisionEvaluator.VARIANTS.size(), precisionResults.size());
+    var saved = precisionResults.get(0);
+    var half = precisionResults.get(2);
+    assertEquals(saved.getAccuracy(), precisionResults.get(1).getAccuracy());
+    assertTrue(half.getEstimatedBytes() < saved.getEstimatedBytes());
   }
 
 
@@ -150,6 +225,55 @@ class TestEndToEnd {
       .expectStatus().is4xxClientError()
       .expectBody(JsonErrorResponse.class)
       .isEqualTo(new JsonErrorResponse("400 Height must be 28 but got 27"));
+
+    // Empty batch input
+    webTestClient
+      .post()
+      .uri("/classify-digits")
+      .bodyValue(new DigitClassificationBatchInput(new double[0][][]))
+      .exchange()
+      .expectStatus().is4xxClientError()
+      .expectBody(JsonErrorResponse.class)
+      .isEqualTo(new JsonErrorResponse("400 No images"));
+
+    // Incorrect width input in batch
+    webTestClient
+      .post()
+      .uri("/classify-digits")
+      .bodyValue(new DigitClassificationBatchInput(new double[][][]{new double[28][28], new double[28][27]}))
+      .exchange()
+      .expectStatus().is4xxClientError()
+      .expectBody(JsonErrorResponse.class)
+      .isEqualTo(new JsonErrorResponse("400 Invalid length at image 1 at row 0 should be 28 but got 27"));
+  }
+
+
+  @Test
+  void testInvalidBinaryInputs() {
+    assertBinaryBadRequest("/classify-digit", BinaryDigitFormat.IMAGE_VALUE, new byte[783],
+      "400 Image should be 784 bytes but got 783");
+    assertBinaryBadRequest("/classify-digit", BinaryDigitFormat.IMAGE_VALUE, new byte[785],
+      "400 Unexpected bytes after the last image");
+    assertBinaryBadRequest("/classify-digits", BinaryDigitFormat.IMAGE_BATCH_VALUE, new byte[2],
+      "400 Missing image count");
+    assertBinaryBadRequest("/classify-digits", BinaryDigitFormat.IMAGE_BATCH_VALUE,
+      ByteBuffer.allocate(4).putInt(65).array(),
+      "400 At most 64 images allowed but got 65");
+    assertBinaryBadRequest("/classify-digits", BinaryDigitFormat.IMAGE_BATCH_VALUE,
+      ByteBuffer.allocate(4 + 784 + 10).putInt(2).array(),
+      "400 Image 1 should be 784 bytes but got 10");
+  }
+
+
+  @Test
+  void testReady() {
+    webTestClient
+      .get()
+      .uri("/ready")
+      .exchange()
+      .expectStatus().isOk()
+      .expectBody(String.class)
+      .isEqualTo("ready");
   }
 
 
@@ -165,6 +289,28 @@ class TestEndToEnd {
   }
 
 
+  private void assertBinaryBadRequest(String uri, String contentType, byte[] body, String message) {
+    webTestClient
+      .post()
+      .uri(uri)
+      .contentType(MediaType.valueOf(contentType))
+      .bodyValue(body)
+      .exchange()
+      .expectStatus().isBadRequest()
+      .expectBody(JsonErrorResponse.class)
+      .isEqualTo(new JsonErrorResponse(message));
+  }
+
+  private byte[] toImageBytes(double[][] pixels) {
+    var bytes = new byte[BinaryDigitFormat.IMAGE_SIZE];
+    for (int h = 0; h < 28; h++) {
+      for (int l = 0; l < 28; l++) {
+        bytes[h * 28 + l] = (byte) pixels[h][l];
+      }
+    }
+    return bytes;
+  }
+
   @SneakyThrows
   private Path localResourcesPath(String fileName) {
     return Paths.get(Objects.requireNonNull(getClass().getClassLoader().getResource(fileName)).toURI());
@@ -0,0 +1,74 @@
+package dev.jamesleach.mnist;
+
+import com.google.common.collect.Lists;
+import dev.jamesleach.neural.data.LabeledDataSet;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestMNistCsv {
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void testSameAsParsingRows() {
+    var csv = localResourcesPath("mnist-ten-rows-train.csv");
+    var expected = Lists.partition(MNistCsv.readPoints(csv), 3);
+
+    var actual = MNistCsv.readDataSets(csv, 3);
+
+    assertEquals(MNistCsv.DATA_SHAPE, actual.getDataShape());
+    assertEquals(expected.size(), actual.getDataSets().size());
+    for (int i = 0; i < expected.size(); i++) {
+      var expectedDataSet = new LabeledDataSet(expected.get(i)).getDataSet();
+      var actualDataSet = actual.getDataSets().get(i).getDataSet();
+      assertEquals(expectedDataSet.getFeatures(), actualDataSet.getFeatures());
+      assertEquals(expectedDataSet.getLabels(), actualDataSet.getLabels());
+    }
+  }
+
+
+  @Test
+  void testLineEndings() throws Exception {
+    var lines = Files.readAllLines(localResourcesPath("mnist-ten-rows-train.csv"));
+    var crlf = tempDir.resolve("crlf.csv");
+    Files.writeString(crlf, String.join("\r\n", lines) + "\r\n");
+
+    var expected = MNistCsv.readDataSets(localResourcesPath("mnist-ten-rows-train.csv"), 4);
+    var actual = MNistCsv.readDataSets(crlf, 4);
+    assertEquals(expected.getDataSets().size(), actual.getDataSets().size());
+    for (int i = 0; i < expected.getDataSets().size(); i++) {
+      assertEquals(expected.getDataSets().get(i).getDataSet().getFeatures(),
+        actual.getDataSets().get(i).getDataSet().getFeatures());
+    }
+  }
+
+
+  @Test
+  void testInvalidRows() throws Exception {
+    assertInvalid("label,pixels\n1,2,3\n", "Line 2 should have 785 values but got 3");
+    assertInvalid("label,pixels\n12," + "0,".repeat(783) + "0\n", "Invalid label 12 on line 2");
+    assertInvalid("label,pixels\n1,," + "0,".repeat(782) + "0\n", "Missing value 1 on line 2");
+    assertInvalid("label,pixels\n1,-1," + "0,".repeat(782) + "0\n", "Unexpected character '-' on line 2");
+  }
+
+
+  private void assertInvalid(String content, String message) throws Exception {
+    var csv = tempDir.resolve("invalid.csv");
+    Files.writeString(csv, content);
+    var exception = assertThrows(IllegalArgumentException.class, () -> MNistCsv.readDataSets(csv, 10));
+    assertEquals(message, exception.getMessage());
+  }
+
+  @SneakyThrows
+  private Path localResourcesPath(String fileName) {
+    return Paths.get(Objects.requireNonNull(getClass().getClassLoader().getResource(fileName)).toURI());
+  }
+}
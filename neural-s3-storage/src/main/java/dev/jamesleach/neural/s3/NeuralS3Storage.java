@@ -1,62 +1,136 @@
 package dev.jamesleach.neural.s3;
 
-import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.jamesleach.neural.net.NetworkBinary;
 import dev.jamesleach.neural.net.NetworkLoader;
 import dev.jamesleach.neural.net.NetworkSaver;
+import dev.jamesleach.neural.net.NetworkStorageFormat;
+import dev.jamesleach.neural.net.NetworkStorageFormat.Header;
 import dev.jamesleach.neural.net.SerializedNetwork;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
-import java.nio.charset.StandardCharsets;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Optional;
 
+/**
+ * Networks stored in S3 as a header object and a model object.
+ * One pooled client is shared by all calls. Models are uploaded in parts once over the multipart threshold,
+ * and models uploaded in parts are downloaded in parallel, always via a temporary file rather than memory.
+ * Used through the disk cache in {@link S3StorageConfiguration}.
+ */
 @Profile("!test")
-@Primary
 @Slf4j
 @Component
-class NeuralS3Storage implements NetworkLoader, NetworkSaver {
+class NeuralS3Storage implements NetworkLoader, NetworkSaver, DisposableBean {
   private static final Regions REGION = Regions.EU_WEST_2;
-  private static final String BUCKET_NAME = "saved-networks";
+  private static final long MIN_PART_SIZE_BYTES = 5L * 1024 * 1024;
 
   private final ObjectMapper objectMapper;
-  private final AWSCredentials awSCredentials;
+  private final String bucketName;
+  private final AmazonS3 client;
+  private final TransferManager transferManager;
 
   NeuralS3Storage(ObjectMapper objectMapper,
-                         @Value("${aws-access-key-id:}") String accessKeyId,
-                         @Value("${aws-secret-access-key:}") String secretAccessKey) {
+                  @Value("${aws-access-key-id:}") String accessKeyId,
+                  @Value("${aws-secret-access-key:}") String secretAccessKey,
+                  @Value("${s3-endpoint:}") String endpoint,
+                  @Value("${s3-bucket:saved-networks}") String bucketName,
+                  @Value("${s3-max-connections:50}") int maxConnections,
+                  @Value("${s3-multipart-threshold-bytes:16777216}") long multipartThresholdBytes) {
     this.objectMapper = objectMapper;
+    this.bucketName = bucketName;
+
+    var builder = AmazonS3ClientBuilder.standard()
+      .withCredentials(credentials(accessKeyId, secretAccessKey))
+      .withClientConfiguration(new ClientConfiguration().withMaxConnections(maxConnections));
+    if (StringUtils.isBlank(endpoint)) {
+      builder.withRegion(REGION);
+    } else {
+      // e.g. a local S3-compatible server
+      log.info("Using S3 endpoint {}", endpoint);
+      builder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, REGION.getName()))
+        .withPathStyleAccessEnabled(true);
+    }
+    this.client = builder.build();
+    this.transferManager = TransferManagerBuilder.standard()
+      .withS3Client(client)
+      .withMultipartUploadThreshold(multipartThresholdBytes)
+      .withMinimumUploadPartSize(MIN_PART_SIZE_BYTES)
+      .withShutDownThreadPools(true)
+      .build();
+  }
+
+  private static AWSCredentialsProvider credentials(String accessKeyId, String secretAccessKey) {
     if (StringUtils.isBlank(accessKeyId) || StringUtils.isBlank(secretAccessKey)) {
       log.info("Using DefaultAWSCredentialsProviderChain");
-      awSCredentials = new DefaultAWSCredentialsProviderChain().getCredentials();
-    } else {
-      // Print the last 4 letters of the key
-      log.info("Using AWS Access Key {}", accessKeyId.replaceAll(".(?=.{4})", "X"));
-      awSCredentials = new BasicAWSCredentials(accessKeyId, secretAccessKey);
+      return DefaultAWSCredentialsProviderChain.getInstance();
     }
+    // Print the last 4 letters of the key
+    log.info("Using AWS Access Key {}", accessKeyId.replaceAll(".(?=.{4})", "X"));
+    return new AWSStaticCredentialsProvider(new BasicAWSCredentials(accessKeyId, secretAccessKey));
   }
 
+
+  /**
+   * The model object is downloaded to a temporary file and read from there,
+   * the file is deleted when the network binary is released.
+   */
   @Override
   public Optional<SerializedNetwork> load(@NonNull String id) {
     try {
-      var obj = client().getObject(BUCKET_NAME, objectName(id));
-      if (obj == null) {
-        return Optional.empty();
+      if (client.doesObjectExist(bucketName, headerObjectName(id))) {
+        Header header;
+        try (var object = client.getObject(bucketName, headerObjectName(id))) {
+          header = objectMapper.readValue(object.getObjectContent(), Header.class);
+        }
+        var file = tempFile(id);
+        try {
+          transferManager.download(new GetObjectRequest(bucketName, binaryObjectName(id)), file.toFile())
+            .waitForCompletion();
+          return Optional.of(NetworkStorageFormat.fromHeader(header, NetworkBinary.ofTemporaryFile(file)));
+        } catch (Exception e) {
+          Files.deleteIfExists(file);
+          throw e;
+        }
       }
-      String contentString = IOUtils.toString(obj.getObjectContent(), StandardCharsets.UTF_8);
-      return Optional.of(objectMapper.readValue(contentString, SerializedNetwork.class));
+      if (client.doesObjectExist(bucketName, legacyObjectName(id))) {
+        log.info("Reading legacy network '{}' from S3", id);
+        var file = tempFile(id);
+        try (var object = client.getObject(bucketName, legacyObjectName(id))) {
+          return Optional.of(NetworkStorageFormat.readLegacy(objectMapper, object.getObjectContent(), file));
+        } catch (Exception e) {
+          Files.deleteIfExists(file);
+          throw e;
+        }
+      }
+      return Optional.empty();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.error("Interrupted loading network from S3", e);
+      return Optional.empty();
     } catch (Exception e) {
       log.error("Error loading network from S3", e);
       return Optional.empty();
@@ -65,26 +139,82 @@ class NeuralS3Storage implements NetworkLoader, NetworkSaver {
 
 
   /**
-   * putObject uses UTF-8 encoding.
+   * ETags of the stored objects, read without downloading them.
+   */
+  @Override
+  public Optional<String> version(@NonNull String id) {
+    try {
+      if (client.doesObjectExist(bucketName, headerObjectName(id))) {
+        return Optional.of(client.getObjectMetadata(bucketName, headerObjectName(id)).getETag() + "/"
+          + client.getObjectMetadata(bucketName, binaryObjectName(id)).getETag());
+      }
+      if (client.doesObjectExist(bucketName, legacyObjectName(id))) {
+        return Optional.of(client.getObjectMetadata(bucketName, legacyObjectName(id)).getETag());
+      }
+      return Optional.empty();
+    } catch (Exception e) {
+      log.error("Error reading network version from S3", e);
+      return Optional.empty();
+    }
+  }
+
+
+  /**
+   * The header is written last so a partly saved network is never loaded.
    */
   @Override
   public void save(@NonNull SerializedNetwork network) {
     log.info("Saving network '{}' in S3", network.getId());
+    Path temporary = null;
     try {
-      String json = objectMapper.writeValueAsString(network);
-      client().putObject(BUCKET_NAME, objectName(network.getId()), json);
+      // Upload from a file so the model is sent in parts without being buffered
+      var binary = network.getNetworkBinary().file().orElse(null);
+      if (binary == null) {
+        temporary = binary = tempFile(network.getId());
+        try (var in = network.getNetworkBinary().openStream()) {
+          Files.copy(in, binary, StandardCopyOption.REPLACE_EXISTING);
+        }
+      }
+      transferManager.upload(bucketName, binaryObjectName(network.getId()), binary.toFile())
+        .waitForCompletion();
+
+      var header = objectMapper.writeValueAsBytes(NetworkStorageFormat.header(network));
+      var metadata = new ObjectMetadata();
+      metadata.setContentLength(header.length);
+      metadata.setContentType("application/json");
+      client.putObject(bucketName, headerObjectName(network.getId()), new ByteArrayInputStream(header), metadata);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted saving network in S3", e);
     } catch (Exception e) {
       throw new RuntimeException("Error saving network in S3", e);
+    } finally {
+      if (temporary != null && !temporary.toFile().delete()) {
+        log.warn("Could not delete {}", temporary);
+      }
     }
   }
 
-  private AmazonS3 client() {
-    return AmazonS3ClientBuilder.standard()
-      .withCredentials(new AWSStaticCredentialsProvider(awSCredentials))
-      .withRegion(REGION).build();
+
+  @Override
+  public void destroy() {
+    // Also shuts down the client
+    transferManager.shutdownNow(true);
+  }
+
+  private Path tempFile(String id) throws IOException {
+    return Files.createTempFile(id, ".bin");
+  }
+
+  private String headerObjectName(String id) {
+    return id + ".net" + NetworkStorageFormat.VERSION + ".json";
+  }
+
+  private String binaryObjectName(String id) {
+    return id + ".net" + NetworkStorageFormat.VERSION + ".bin";
   }
 
-  private String objectName(String id) {
+  private String legacyObjectName(String id) {
     return id + ".json";
   }
 }
@@ -0,0 +1,29 @@
+package dev.jamesleach.neural.s3;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.jamesleach.neural.net.DiskCachingNetworkStorage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+
+import java.nio.file.Paths;
+
+/**
+ * S3 storage behind a local disk cache.
+ */
+@Profile("!test")
+@Configuration
+class S3StorageConfiguration {
+  private static final long BYTES_PER_MB = 1024 * 1024;
+
+  @Bean
+  @Primary
+  DiskCachingNetworkStorage diskCachingNetworkStorage(NeuralS3Storage s3Storage,
+                                                      ObjectMapper objectMapper,
+                                                      @Value("${network-cache.dir:./network-cache}") String dir,
+                                                      @Value("${network-cache.max-size-mb:1024}") long maxSizeMb) {
+    return new DiskCachingNetworkStorage(s3Storage, s3Storage, objectMapper, Paths.get(dir), maxSizeMb * BYTES_PER_MB);
+  }
+}
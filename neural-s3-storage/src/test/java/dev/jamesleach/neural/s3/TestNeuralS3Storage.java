@@ -0,0 +1,109 @@
+package dev.jamesleach.neural.s3;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.jamesleach.neural.data.NeuralDataUtils;
+import dev.jamesleach.neural.net.ExampleNetworks;
+import dev.jamesleach.neural.net.NetworkSerializer;
+import dev.jamesleach.neural.net.NetworkStorageFormat.LegacyNetwork;
+import dev.jamesleach.neural.net.SerializedNetwork;
+import io.findify.s3mock.S3Mock;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+import java.util.Random;
+
+import static dev.jamesleach.neural.net.ExampleNetworks.SMALL_SHAPE;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NeuralS3Storage} against a local S3-compatible server.
+ */
+class TestNeuralS3Storage {
+  private static final int PORT = 8765;
+  private static final String ENDPOINT = "http://localhost:" + PORT;
+  private static final String BUCKET = "test-saved-networks";
+  private static final String ID = "test-network";
+
+  private static S3Mock s3Mock;
+  private static AmazonS3 client;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final NetworkSerializer serializer = new NetworkSerializer();
+  // Threshold of zero so every model goes up as a multipart upload
+  private final NeuralS3Storage storage = new NeuralS3Storage(objectMapper, "access-key", "secret-key",
+    ENDPOINT, BUCKET, 10, 0);
+
+  @BeforeAll
+  static void startS3() {
+    s3Mock = new S3Mock.Builder().withPort(PORT).withInMemoryBackend().build();
+    s3Mock.start();
+    client = AmazonS3ClientBuilder.standard()
+      .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("access-key", "secret-key")))
+      .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(ENDPOINT, "eu-west-2"))
+      .withPathStyleAccessEnabled(true)
+      .build();
+    client.createBucket(BUCKET);
+  }
+
+  @AfterAll
+  static void stopS3() {
+    client.shutdown();
+    s3Mock.shutdown();
+  }
+
+  @AfterEach
+  void shutdownStorage() {
+    storage.destroy();
+  }
+
+
+  @Test
+  void testSaveAndLoad() {
+    var graph = ExampleNetworks.feedForward(SMALL_SHAPE, 10);
+    storage.save(new SerializedNetwork(ID, SMALL_SHAPE, serializer.serialize(graph)));
+
+    var loaded = storage.load(ID).orElseThrow();
+    assertEquals(ID, loaded.getId());
+    assertEquals(SMALL_SHAPE, loaded.getDataShape());
+    assertTrue(loaded.getNetworkBinary().file().isPresent());
+    assertSameOutput(graph, serializer.deserialize(loaded.getNetworkBinary()));
+  }
+
+
+  @Test
+  void testLoadLegacy() throws Exception {
+    var graph = ExampleNetworks.feedForward(SMALL_SHAPE, 10);
+    byte[] bytes;
+    try (var in = serializer.serialize(graph).openStream()) {
+      bytes = in.readAllBytes();
+    }
+    client.putObject(BUCKET, "legacy-network.json", objectMapper.writeValueAsString(
+      new LegacyNetwork("legacy-network", SMALL_SHAPE, Base64.getEncoder().encodeToString(bytes))));
+
+    var loaded = storage.load("legacy-network").orElseThrow();
+    assertEquals("legacy-network", loaded.getId());
+    assertEquals(SMALL_SHAPE, loaded.getDataShape());
+    assertSameOutput(graph, serializer.deserialize(loaded.getNetworkBinary()));
+  }
+
+
+  @Test
+  void testMissing() {
+    assertTrue(storage.load("missing").isEmpty());
+  }
+
+
+  private void assertSameOutput(ComputationGraph expected, ComputationGraph actual) {
+    var input = NeuralDataUtils.toSingleInputArray(ExampleNetworks.randomPoint(SMALL_SHAPE, new Random(1)));
+    assertEquals(expected.output(input)[0], actual.output(input)[0]);
+  }
+}
@@ -15,4 +15,14 @@ public class DataShape {
    private final int length;
    private final int height;
    private final int depth;
+
+   /**
+    * @return true if the other shape has the same dimensions, ignoring the number of labels.
+    */
+   public boolean hasSameInputShape(DataShape other) {
+      return numDimensions == other.numDimensions
+        && length == other.length
+        && height == other.height
+        && depth == other.depth;
+   }
 }
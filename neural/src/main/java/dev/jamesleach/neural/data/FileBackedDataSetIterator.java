@@ -0,0 +1,205 @@
+package dev.jamesleach.neural.data;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+/**
+ * Iterate the batches of a {@link LabeledDataSetFile} without holding them all in memory.
+ * <p>
+ * Batches are read on a background thread up to a number of batches ahead, so at most that many plus the
+ * current batch are in memory at once. When shuffling, each epoch visits the batches in a new order
+ * and shuffles the rows within each batch, from a seed so runs are repeatable.
+ * Close the iterator to stop the background thread and close the file.
+ */
+@Slf4j
+public class FileBackedDataSetIterator implements DataSetIterator, AutoCloseable {
+  private final LabeledDataSetFile.Reader reader;
+  private final ExecutorService prefetchExecutor;
+  private final int prefetchBatches;
+  private final boolean shuffle;
+  private final Random random;
+  private final Queue<Future<DataSet>> prefetched = new ArrayDeque<>();
+  private int[] order;
+  // Next batch to return, and to prefetch, as positions in the order
+  private int cursor;
+  private int prefetchCursor;
+  @Getter
+  @Setter
+  private DataSetPreProcessor preProcessor;
+
+  /**
+   * @param file            written by {@link LabeledDataSetFile#write}
+   * @param prefetchBatches batches to read ahead, at least one
+   * @param shuffle         whether to shuffle batches and rows each epoch
+   * @param seed            seed for shuffling
+   */
+  public FileBackedDataSetIterator(@NonNull Path file, int prefetchBatches, boolean shuffle, long seed) {
+    if (prefetchBatches < 1) {
+      throw new IllegalArgumentException("Must prefetch at least one batch but got " + prefetchBatches);
+    }
+    try {
+      this.reader = LabeledDataSetFile.Reader.open(file);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not open " + file, e);
+    }
+    this.prefetchBatches = prefetchBatches;
+    this.shuffle = shuffle;
+    this.random = new Random(seed);
+    this.prefetchExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+      .setNameFormat("data-set-prefetch-%d")
+      .setDaemon(true)
+      .build());
+    startEpoch();
+    log.info("Reading {} batches of {} from {}", reader.getBatchCount(), reader.getDataShape(), file);
+  }
+
+
+  /**
+   * The shape of every row.
+   */
+  public DataShape getDataShape() {
+    return reader.getDataShape();
+  }
+
+
+  @Override
+  public boolean hasNext() {
+    return cursor < order.length;
+  }
+
+
+  @Override
+  public DataSet next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    prefetch();
+    DataSet dataSet;
+    try {
+      dataSet = prefetched.remove().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted reading batch", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Error reading batch " + order[cursor], e.getCause());
+    }
+    cursor++;
+    // Keep reading ahead while the caller uses this batch
+    prefetch();
+    if (shuffle) {
+      dataSet.shuffle(random.nextLong());
+    }
+    if (preProcessor != null) {
+      preProcessor.preProcess(dataSet);
+    }
+    return dataSet;
+  }
+
+
+  /**
+   * Not supported, batches are read as written.
+   */
+  @Override
+  public DataSet next(int num) {
+    throw new UnsupportedOperationException("Batches are read as written");
+  }
+
+
+  @Override
+  public int inputColumns() {
+    var shape = reader.getDataShape();
+    return shape.getDepth() * shape.getHeight() * shape.getLength();
+  }
+
+
+  @Override
+  public int totalOutcomes() {
+    return reader.getDataShape().getNumLabels();
+  }
+
+
+  @Override
+  public boolean resetSupported() {
+    return true;
+  }
+
+
+  /**
+   * False as batches are already read ahead.
+   */
+  @Override
+  public boolean asyncSupported() {
+    return false;
+  }
+
+
+  /**
+   * Start the next epoch, in a new order if shuffling.
+   */
+  @Override
+  public void reset() {
+    prefetched.forEach(f -> f.cancel(false));
+    prefetched.clear();
+    startEpoch();
+  }
+
+
+  @Override
+  public int batch() {
+    return reader.getBatchCount() == 0 ? 0 : reader.getRows(0);
+  }
+
+
+  @Override
+  public List<String> getLabels() {
+    return null;
+  }
+
+
+  @Override
+  public void close() throws IOException {
+    prefetchExecutor.shutdownNow();
+    reader.close();
+  }
+
+  private void startEpoch() {
+    order = IntStream.range(0, reader.getBatchCount()).toArray();
+    if (shuffle) {
+      for (int i = order.length - 1; i > 0; i--) {
+        int j = random.nextInt(i + 1);
+        int swap = order[i];
+        order[i] = order[j];
+        order[j] = swap;
+      }
+    }
+    cursor = 0;
+    prefetchCursor = 0;
+  }
+
+  private void prefetch() {
+    while (prefetchCursor < order.length && prefetchCursor < cursor + prefetchBatches) {
+      int batch = order[prefetchCursor++];
+      prefetched.add(prefetchExecutor.submit(() -> reader.readBatch(batch)));
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package dev.jamesleach.neural.data;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reusable network input for one or more data points.
+ * Values are held flat in [row][depth][height][length] order, the layout of the network input array,
+ * so filling the buffer and copying it to the network needs no intermediate arrays.
+ */
+public class InputBuffer {
+  private static final ThreadLocal<Map<DataShape, InputBuffer>> THREAD_BUFFERS = ThreadLocal.withInitial(HashMap::new);
+
+  @Getter
+  private final DataShape dataShape;
+  @Getter
+  private final int rows;
+  private final int rowSize;
+  private final float[] values;
+  private INDArray array;
+
+  public InputBuffer(@NonNull DataShape dataShape, int rows) {
+    if (rows < 1) {
+      throw new IllegalArgumentException("Must have at least one row but got " + rows);
+    }
+    this.dataShape = dataShape;
+    this.rows = rows;
+    this.rowSize = dataShape.getDepth() * dataShape.getHeight() * dataShape.getLength();
+    this.values = new float[rows * rowSize];
+  }
+
+
+  /**
+   * A single row buffer owned by the current thread.
+   * The contents are only valid until the buffer is next requested on the same thread.
+   */
+  public static InputBuffer forCurrentThread(@NonNull DataShape dataShape) {
+    return THREAD_BUFFERS.get().computeIfAbsent(dataShape, s -> new InputBuffer(s, 1));
+  }
+
+
+  /**
+   * Set a single value.
+   */
+  public void put(int row, int height, int length, int depth, float value) {
+    values[((row * dataShape.getDepth() + depth) * dataShape.getHeight() + height) * dataShape.getLength() + length] = value;
+  }
+
+
+  /**
+   * Copy all values of a data point into a row.
+   */
+  public void putRow(int row, @NonNull DataPoint dataPoint) {
+    int offset = row * rowSize;
+    for (int d = 0; d < dataShape.getDepth(); d++) {
+      for (int h = 0; h < dataShape.getHeight(); h++) {
+        for (int l = 0; l < dataShape.getLength(); l++) {
+          values[offset++] = (float) dataPoint.getInputData3d(h, l, d);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Copy the first row of another buffer of the same shape into a row.
+   */
+  public void putRow(int row, @NonNull InputBuffer source) {
+    if (!dataShape.hasSameInputShape(source.dataShape)) {
+      throw new IllegalArgumentException("Cannot copy row of shape " + source.dataShape + " into " + dataShape);
+    }
+    System.arraycopy(source.values, 0, values, row * rowSize, rowSize);
+  }
+
+
+  /**
+   * Flat values in [row][depth][height][length] order.
+   */
+  public float[] getValues() {
+    return values;
+  }
+
+
+  /**
+   * Copy the values into a re-used [rows, depth, height, length] INDArray.
+   * The array is overwritten by the next call.
+   */
+  public INDArray toINDArray() {
+    if (array == null) {
+      // Never in a workspace, the array is kept after the workspace is closed
+      try (var ignored = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+        array = Nd4j.create(DataType.FLOAT, rows, dataShape.getDepth(), dataShape.getHeight(), dataShape.getLength());
+      }
+    }
+    array.data().setData(values);
+    return array;
+  }
+}
@@ -6,19 +6,23 @@ import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.dataset.adapter.SingletonDataSetIterator;
 import org.nd4j.linalg.factory.Nd4j;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.IntStream;
 
 /**
  * A collection of labeled data points for training a neural network.
  */
 @Data
 public class LabeledDataSet {
+  private static final int MIN_PARALLEL_ROWS = 64;
 
   private final DataShape dataShape;
   private final DataSet dataSet;
 
   /**
    * Create a Deeplearning4j Dataset from a list of {@link LabeledDataPoint}.
+   * Rows are copied in parallel into one flat buffer per array, each wrapped as an INDArray in one copy.
    */
   public LabeledDataSet(List<LabeledDataPoint> data) {
     if (data.isEmpty()) {
@@ -30,14 +34,52 @@ public class LabeledDataSet {
       throw new IllegalStateException("Only 3d data implemented");
     }
 
-    INDArray outputNDArray = Nd4j.zeros(data.size(), dataShape.getNumLabels());
-    INDArray inputNDArray = Nd4j.zeros(data.size(), dataShape.getDepth(), dataShape.getHeight(), dataShape.getLength());
-    for (int i = 0; i < data.size(); i++) {
-      inputNDArray.putRow(i, NeuralDataUtils.inInputArrayRow(dataShape, data.get(i)::getInputData3d));
-      outputNDArray.putRow(i, Nd4j.create(data.get(i).getLabels(), new int[]{dataShape.getNumLabels()}));
+    int rows = data.size();
+    int numLabels = dataShape.getNumLabels();
+    var features = new InputBuffer(dataShape, rows);
+    var labels = new float[rows * numLabels];
+    var rowIndexes = IntStream.range(0, rows);
+    if (rows >= MIN_PARALLEL_ROWS) {
+      rowIndexes = rowIndexes.parallel();
     }
+    rowIndexes.forEach(i -> {
+      var point = data.get(i);
+      if (!dataShape.hasSameInputShape(point.getDataShape()) || point.getLabels().length != numLabels) {
+        throw new IllegalArgumentException("Data point " + i + " has shape " + point.getDataShape()
+          + " but data point 0 has shape " + dataShape);
+      }
+      features.putRow(i, point);
+      for (int l = 0; l < numLabels; l++) {
+        labels[i * numLabels + l] = (float) point.getLabels()[l];
+      }
+    });
 
-    this.dataSet = new DataSet(inputNDArray, outputNDArray);
+    this.dataSet = new DataSet(
+      Nd4j.create(features.getValues(),
+        new long[]{rows, dataShape.getDepth(), dataShape.getHeight(), dataShape.getLength()}, 'c'),
+      Nd4j.create(labels, new long[]{rows, numLabels}, 'c'));
+  }
+
+  /**
+   * Wrap already built [rows, depth, height, length] features and [rows, labels] labels.
+   */
+  public LabeledDataSet(DataShape dataShape, INDArray features, INDArray labels) {
+    if (dataShape.getNumDimensions() != 3) {
+      throw new IllegalStateException("Only 3d data implemented");
+    }
+    if (features.rank() != 4
+      || features.size(1) != dataShape.getDepth()
+      || features.size(2) != dataShape.getHeight()
+      || features.size(3) != dataShape.getLength()) {
+      throw new IllegalArgumentException("Features of shape " + Arrays.toString(features.shape())
+        + " do not match " + dataShape);
+    }
+    if (labels.rank() != 2 || labels.size(0) != features.size(0) || labels.size(1) != dataShape.getNumLabels()) {
+      throw new IllegalArgumentException("Labels of shape " + Arrays.toString(labels.shape())
+        + " do not match " + features.size(0) + " rows of " + dataShape);
+    }
+    this.dataShape = dataShape;
+    this.dataSet = new DataSet(features, labels);
   }
 
   public SingletonDataSetIterator toSingletonIterator() {
@@ -0,0 +1,239 @@
+package dev.jamesleach.neural.data;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Optional;
+
+/**
+ * Preprocessed {@link LabeledDataSetCollection}s on disk, so training can skip parsing its source data.
+ * <p>
+ * A header of magic number, version, a source stamp, the data shape and batch count, then per batch the row count
+ * followed by the features and labels as raw little-endian floats in row-major order.
+ * The stamp is chosen by the caller to identify the source, such as its size and modification time,
+ * and a file with a different stamp is ignored.
+ * Files are read with positioned reads rather than mapped, so they may be larger than memory or 2GB.
+ */
+@Slf4j
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class LabeledDataSetFile {
+  private static final int MAGIC = 0x4c445346; // LDSF
+  private static final int VERSION = 1;
+
+  /**
+   * The data sets in the file if it exists, is readable and has the expected stamp, otherwise empty.
+   * Everything is read into memory, see {@link FileBackedDataSetIterator} to read batches as they are needed.
+   */
+  public static Optional<LabeledDataSetCollection> read(@NonNull Path file, @NonNull String stamp) {
+    if (!Files.isRegularFile(file)) {
+      return Optional.empty();
+    }
+    try (var reader = Reader.open(file)) {
+      if (!reader.getStamp().equals(stamp)) {
+        log.info("Ignoring {}, made from {} not {}", file, reader.getStamp(), stamp);
+        return Optional.empty();
+      }
+      var dataSets = new ArrayList<LabeledDataSet>(reader.getBatchCount());
+      for (int b = 0; b < reader.getBatchCount(); b++) {
+        var dataSet = reader.readBatch(b);
+        dataSets.add(new LabeledDataSet(reader.getDataShape(), dataSet.getFeatures(), dataSet.getLabels()));
+      }
+      return Optional.of(new LabeledDataSetCollection(dataSets));
+    } catch (IOException | RuntimeException e) {
+      log.warn("Ignoring unreadable data set file {}", file, e);
+      return Optional.empty();
+    }
+  }
+
+
+  /**
+   * Whether the file exists, is readable and has the expected stamp, reading only its header.
+   */
+  public static boolean isCurrent(@NonNull Path file, @NonNull String stamp) {
+    if (!Files.isRegularFile(file)) {
+      return false;
+    }
+    try (var reader = Reader.open(file)) {
+      return reader.getStamp().equals(stamp);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Ignoring unreadable data set file {}", file, e);
+      return false;
+    }
+  }
+
+
+  /**
+   * Write the data sets, via a temporary file so a partly written file is never read.
+   */
+  public static void write(@NonNull Path file, @NonNull String stamp, @NonNull LabeledDataSetCollection data)
+    throws IOException {
+    if (data.getDataSets().isEmpty()) {
+      throw new IllegalArgumentException("No data sets to write");
+    }
+    var dataShape = data.getDataShape();
+    var directory = file.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    var temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+    try {
+      try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+        out.writeInt(Integer.reverseBytes(MAGIC));
+        out.writeInt(Integer.reverseBytes(VERSION));
+        var stampBytes = stamp.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(Integer.reverseBytes(stampBytes.length));
+        out.write(stampBytes);
+        for (int value : new int[]{dataShape.getNumDimensions(), dataShape.getNumLabels(), dataShape.getLength(),
+          dataShape.getHeight(), dataShape.getDepth(), data.getDataSets().size()}) {
+          out.writeInt(Integer.reverseBytes(value));
+        }
+        for (var dataSet : data.getDataSets()) {
+          if (!dataSet.getDataShape().equals(dataShape)) {
+            throw new IllegalArgumentException("Data set of shape " + dataSet.getDataShape() + " in a collection of "
+              + dataShape);
+          }
+          out.writeInt(Integer.reverseBytes((int) dataSet.getDataSet().getFeatures().size(0)));
+          writeFloats(out, dataSet.getDataSet().getFeatures());
+          writeFloats(out, dataSet.getDataSet().getLabels());
+        }
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static void writeFloats(DataOutputStream out, INDArray array) throws IOException {
+    var buffer = ByteBuffer.allocate(Float.BYTES * (int) array.length()).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.asFloatBuffer().put(array.dup('c').data().asFloat());
+    out.write(buffer.array());
+  }
+
+
+  /**
+   * Random access to the batches of a file, which are only read when asked for.
+   * Safe to read batches from several threads at once.
+   */
+  public static class Reader implements Closeable {
+    private static final int HEADER_INTS = 6;
+
+    private final Path file;
+    private final FileChannel channel;
+    @Getter
+    private final String stamp;
+    @Getter
+    private final DataShape dataShape;
+    private final int featuresPerRow;
+    // Per batch, the position of its first float and its rows
+    private final long[] batchPositions;
+    private final int[] batchRows;
+
+    private Reader(Path file, FileChannel channel) throws IOException {
+      this.file = file;
+      this.channel = channel;
+      var start = read(0, 3 * Integer.BYTES);
+      if (start.getInt() != MAGIC || start.getInt() != VERSION) {
+        throw new IOException(file + " is not a data set file of version " + VERSION);
+      }
+      int stampLength = start.getInt();
+      long position = 3 * Integer.BYTES;
+      var stampBytes = new byte[stampLength];
+      read(position, stampLength).get(stampBytes);
+      this.stamp = new String(stampBytes, StandardCharsets.UTF_8);
+      position += stampLength;
+
+      var header = read(position, HEADER_INTS * Integer.BYTES);
+      position += HEADER_INTS * Integer.BYTES;
+      this.dataShape = new DataShape(header.getInt(), header.getInt(), header.getInt(), header.getInt(), header.getInt());
+      this.featuresPerRow = dataShape.getDepth() * dataShape.getHeight() * dataShape.getLength();
+      int batches = header.getInt();
+
+      this.batchPositions = new long[batches];
+      this.batchRows = new int[batches];
+      for (int b = 0; b < batches; b++) {
+        batchRows[b] = read(position, Integer.BYTES).getInt();
+        batchPositions[b] = position + Integer.BYTES;
+        position = batchPositions[b] + (long) Float.BYTES * batchRows[b] * (featuresPerRow + dataShape.getNumLabels());
+      }
+      if (position != channel.size()) {
+        throw new IOException(file + " should be " + position + " bytes but is " + channel.size());
+      }
+    }
+
+    /**
+     * Open a file and read its header.
+     */
+    public static Reader open(@NonNull Path file) throws IOException {
+      var channel = FileChannel.open(file, StandardOpenOption.READ);
+      try {
+        return new Reader(file, channel);
+      } catch (IOException | RuntimeException e) {
+        channel.close();
+        throw e;
+      }
+    }
+
+
+    public int getBatchCount() {
+      return batchRows.length;
+    }
+
+
+    public int getRows(int batch) {
+      return batchRows[batch];
+    }
+
+
+    /**
+     * Read one batch into new feature and label arrays.
+     */
+    @SneakyThrows
+    public DataSet readBatch(int batch) {
+      int rows = batchRows[batch];
+      var floats = read(batchPositions[batch], Float.BYTES * rows * (featuresPerRow + dataShape.getNumLabels()))
+        .asFloatBuffer();
+      var features = new float[rows * featuresPerRow];
+      floats.get(features);
+      var labels = new float[rows * dataShape.getNumLabels()];
+      floats.get(labels);
+      return new DataSet(
+        Nd4j.create(features, new long[]{rows, dataShape.getDepth(), dataShape.getHeight(), dataShape.getLength()}, 'c'),
+        Nd4j.create(labels, new long[]{rows, dataShape.getNumLabels()}, 'c'));
+    }
+
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+      var buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, position + buffer.position()) < 0) {
+          throw new EOFException(file + " ended before position " + (position + length));
+        }
+      }
+      return buffer.flip();
+    }
+  }
+}
@@ -6,6 +6,8 @@ import lombok.RequiredArgsConstructor;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
+import java.util.List;
+
 /**
  * Static collection of utils for data transformation.
  */
@@ -43,10 +45,23 @@ public class NeuralDataUtils {
    * double array -> reshaped INDArray with one input row.
    */
   public static INDArray toSingleInputArray(@NonNull DataPoint dataPoint) {
-    var dataShape = dataPoint.getDataShape();
-    var output = Nd4j.zeros(1, dataShape.getDepth(), dataShape.getHeight(), dataShape.getLength());
-    output.putRow(0, inInputArrayRow(dataShape, dataPoint::getInputData3d));
-    return output;
+    return toInputArray(List.of(dataPoint));
+  }
+
+
+  /**
+   * double arrays -> reshaped INDArray with one input row per data point.
+   * All points are assumed to have the shape of the first.
+   */
+  public static INDArray toInputArray(@NonNull List<? extends DataPoint> dataPoints) {
+    if (dataPoints.isEmpty()) {
+      throw new IllegalArgumentException("No data points");
+    }
+    var buffer = new InputBuffer(dataPoints.get(0).getDataShape(), dataPoints.size());
+    for (int i = 0; i < dataPoints.size(); i++) {
+      buffer.putRow(i, dataPoints.get(i));
+    }
+    return buffer.toINDArray();
   }
 
 
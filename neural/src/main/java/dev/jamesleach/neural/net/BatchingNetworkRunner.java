@@ -0,0 +1,219 @@
+package dev.jamesleach.neural.net;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import dev.jamesleach.neural.data.ClassificationOutput;
+import dev.jamesleach.neural.data.DataPoint;
+import dev.jamesleach.neural.data.InputBuffer;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Opt-in micro-batching in front of {@link SavedNetworkRunner}.
+ * <p>
+ * When enabled, concurrent requests for the same network are queued and collected
+ * for up to {@code maxWaitMicros} or until {@code maxBatchSize} requests are waiting.
+ * The collected points are then run through the network in a single forward pass.
+ * When disabled every request runs its own forward pass on the calling thread.
+ * Once destroyed, queued requests fail and new requests are rejected.
+ */
+@Slf4j
+@Component
+public class BatchingNetworkRunner implements DisposableBean {
+  // Far longer than any batch should take, so a stuck batcher cannot hang a request forever
+  private static final long RESULT_TIMEOUT_SECONDS = 30;
+
+  private final SavedNetworkRunner runner;
+  private final boolean enabled;
+  private final int maxBatchSize;
+  private final long maxWaitMicros;
+
+  private final ConcurrentMap<String, Batcher> batchers = new ConcurrentHashMap<>();
+  private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+    .setNameFormat("network-batcher-%d")
+    .setDaemon(true)
+    .build());
+  private volatile boolean stopped;
+
+  public BatchingNetworkRunner(SavedNetworkRunner runner,
+                               @Value("${network-batching.enabled:false}") boolean enabled,
+                               @Value("${network-batching.max-batch-size:32}") int maxBatchSize,
+                               @Value("${network-batching.max-wait-micros:2000}") long maxWaitMicros) {
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("Max batch size must be at least 1 but was " + maxBatchSize);
+    }
+    this.runner = runner;
+    this.enabled = enabled;
+    this.maxBatchSize = maxBatchSize;
+    this.maxWaitMicros = maxWaitMicros;
+    if (enabled) {
+      log.info("Batching network requests, max batch size {}, max wait {}us", maxBatchSize, maxWaitMicros);
+    }
+  }
+
+
+  /**
+   * Run a single data point through a saved network, possibly as part of a larger batch.
+   */
+  public ClassificationOutput runClassification(String networkId, DataPoint dataPoint) {
+    if (!enabled) {
+      return runner.runClassification(networkId, dataPoint);
+    }
+    var input = InputBuffer.forCurrentThread(dataPoint.getDataShape());
+    input.putRow(0, dataPoint);
+    return runClassification(networkId, input);
+  }
+
+
+  /**
+   * Run a single row input buffer through a saved network, possibly as part of a larger batch.
+   * The buffer is copied into the batch so must not be modified until this returns.
+   */
+  public ClassificationOutput runClassification(String networkId, InputBuffer input) {
+    if (!enabled) {
+      return runner.runClassification(networkId, input);
+    }
+    if (input.getRows() != 1) {
+      throw new IllegalArgumentException("Expected a single row but got " + input.getRows());
+    }
+
+    if (stopped) {
+      throw new IllegalStateException("Batching has stopped");
+    }
+
+    var pending = new PendingClassification(input);
+    var batcher = batchers.computeIfAbsent(networkId, this::startBatcher);
+    batcher.queue.add(pending);
+    if (stopped) {
+      // Stopped while queueing, so the queue may already have been failed
+      batcher.fail(pending);
+    }
+    try {
+      return pending.getResult().get(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      batcher.queue.remove(pending);
+      throw new IllegalStateException("Interrupted waiting for classification", e);
+    } catch (TimeoutException e) {
+      batcher.queue.remove(pending);
+      throw new IllegalStateException("Timed out after " + RESULT_TIMEOUT_SECONDS
+        + " seconds waiting for classification by network '" + networkId + "'", e);
+    } catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new UncheckedExecutionException(e.getCause());
+    }
+  }
+
+
+  /**
+   * Stop the batchers and fail any queued requests.
+   */
+  @Override
+  public void destroy() {
+    stopped = true;
+    executor.shutdownNow();
+    batchers.values().forEach(Batcher::failQueued);
+  }
+
+
+  private Batcher startBatcher(String networkId) {
+    var batcher = new Batcher(networkId);
+    executor.execute(batcher);
+    return batcher;
+  }
+
+
+  /**
+   * Drains the queue for a single network into batches.
+   */
+  private class Batcher implements Runnable {
+    private final String networkId;
+    private final BlockingQueue<PendingClassification> queue = new LinkedBlockingQueue<>();
+    private final Map<Integer, InputBuffer> batchBuffers = new HashMap<>();
+
+    Batcher(String networkId) {
+      this.networkId = networkId;
+    }
+
+    @Override
+    public void run() {
+      var batch = new ArrayList<PendingClassification>(maxBatchSize);
+      while (!Thread.currentThread().isInterrupted()) {
+        try {
+          // Block for the first point then wait a short time for more to arrive
+          batch.add(queue.take());
+          Queues.drain(queue, batch, maxBatchSize - 1, maxWaitMicros, TimeUnit.MICROSECONDS);
+          runBatch(batch);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          batch.forEach(this::fail);
+          batch.clear();
+        }
+      }
+      failQueued();
+    }
+
+    void failQueued() {
+      var queued = new ArrayList<PendingClassification>();
+      queue.drainTo(queued);
+      queued.forEach(this::fail);
+    }
+
+    /**
+     * Fail a request that has not already completed.
+     */
+    void fail(PendingClassification pending) {
+      pending.getResult().completeExceptionally(
+        new IllegalStateException("Batching stopped for network '" + networkId + "'"));
+    }
+
+    private void runBatch(List<PendingClassification> batch) {
+      // Points of a different shape to the first cannot share the batch
+      var dataShape = batch.get(0).getInput().getDataShape();
+      var compatible = new ArrayList<PendingClassification>(batch.size());
+      for (var pending : batch) {
+        if (dataShape.hasSameInputShape(pending.getInput().getDataShape())) {
+          compatible.add(pending);
+        } else {
+          pending.getResult().completeExceptionally(new IllegalArgumentException(
+            "Input has shape " + pending.getInput().getDataShape() + " but batch has shape " + dataShape));
+        }
+      }
+
+      try {
+        // Re-use an input buffer per batch size
+        var input = batchBuffers.compute(compatible.size(), (size, existing) ->
+          existing != null && existing.getDataShape().equals(dataShape) ? existing : new InputBuffer(dataShape, size));
+        for (int i = 0; i < compatible.size(); i++) {
+          input.putRow(i, compatible.get(i).getInput());
+        }
+        var outputs = runner.runClassificationBatch(networkId, input);
+        for (int i = 0; i < compatible.size(); i++) {
+          compatible.get(i).getResult().complete(outputs.get(i));
+        }
+      } catch (RuntimeException e) {
+        log.warn("Error running batch of {} for network '{}'", compatible.size(), networkId, e);
+        compatible.forEach(p -> p.getResult().completeExceptionally(e));
+      }
+    }
+  }
+
+
+  @Data
+  private static class PendingClassification {
+    private final InputBuffer input;
+    private final CompletableFuture<ClassificationOutput> result = new CompletableFuture<>();
+  }
+}
@@ -0,0 +1,232 @@
+package dev.jamesleach.neural.net;
+
+import dev.jamesleach.neural.data.InputBuffer;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.conf.graph.LayerVertex;
+import org.deeplearning4j.nn.conf.layers.BaseLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.preprocessor.CnnToFeedForwardPreProcessor;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.graph.vertex.GraphVertex;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.activations.IActivation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Plain Java forward pass for graphs that are a single chain of dense layers, such as a hidden layer and a
+ * softmax output. The weights are copied out of the graph into flat float arrays so the graph itself,
+ * and its native memory, can be closed.
+ * <p>
+ * Small networks spend more time crossing into native code than multiplying, which this avoids.
+ * Inner loops run over contiguous arrays so the JIT can vectorise them, and zero inputs,
+ * common in images and after ReLU, are skipped.
+ */
+@Slf4j
+@RequiredArgsConstructor
+class DenseInferenceEngine implements InferenceEngine {
+  private static final List<Activation> SUPPORTED_ACTIVATIONS = List.of(
+    Activation.IDENTITY, Activation.RELU, Activation.SIGMOID, Activation.TANH, Activation.SOFTMAX);
+
+  private final int inputSize;
+  private final List<Layer> layers;
+
+
+  /**
+   * Copy the weights of a graph if it is supported, otherwise empty.
+   * The graph is left open.
+   */
+  static Optional<DenseInferenceEngine> from(ComputationGraph graph) {
+    if (graph.getNumInputArrays() != 1 || graph.getNumOutputArrays() != 1) {
+      return Optional.empty();
+    }
+
+    // Walk back from the output, every vertex must be one layer of the chain
+    var chain = new ArrayList<GraphVertex>();
+    var vertex = graph.getVertex(graph.getConfiguration().getNetworkOutputs().get(0));
+    while (!vertex.isInputVertex()) {
+      if (!vertex.hasLayer() || vertex.getInputVertices() == null || vertex.getInputVertices().length != 1) {
+        return Optional.empty();
+      }
+      chain.add(vertex);
+      vertex = graph.getVertices()[vertex.getInputVertices()[0].getVertexIndex()];
+    }
+    if (chain.size() + 1 != graph.getVertices().length) {
+      return Optional.empty();
+    }
+    Collections.reverse(chain);
+
+    var layers = new ArrayList<Layer>();
+    for (int i = 0; i < chain.size(); i++) {
+      var layer = toLayer(graph, chain.get(i), i == 0);
+      if (layer.isEmpty()) {
+        return Optional.empty();
+      }
+      if (i > 0 && layer.get().getInputSize() != layers.get(i - 1).getOutputSize()) {
+        return Optional.empty();
+      }
+      layers.add(layer.get());
+    }
+    return Optional.of(new DenseInferenceEngine(layers.get(0).getInputSize(), List.copyOf(layers)));
+  }
+
+  private static Optional<Layer> toLayer(ComputationGraph graph, GraphVertex vertex, boolean first) {
+    var conf = vertex.getLayer().conf().getLayer();
+    if (!(conf.getClass() == DenseLayer.class || conf.getClass() == OutputLayer.class)) {
+      return Optional.empty();
+    }
+    if (conf instanceof DenseLayer && ((DenseLayer) conf).hasLayerNorm()) {
+      return Optional.empty();
+    }
+
+    // Only a convolution-style input flattened in the input buffer's own order
+    var confVertex = graph.getConfiguration().getVertices().get(vertex.getVertexName());
+    var preProcessor = ((LayerVertex) confVertex).getPreProcessor();
+    if (preProcessor != null && !(first && preProcessor instanceof CnnToFeedForwardPreProcessor)) {
+      return Optional.empty();
+    }
+
+    var activation = activation(((BaseLayer) conf).getActivationFn());
+    if (activation.isEmpty()) {
+      return Optional.empty();
+    }
+
+    // [nIn][nOut], flattened by input so each input adds to a contiguous run of outputs
+    var weights = vertex.getLayer().getParam(DefaultParamInitializer.WEIGHT_KEY).toFloatMatrix();
+    int inputSize = weights.length;
+    int outputSize = inputSize == 0 ? 0 : weights[0].length;
+    var flatWeights = new float[inputSize * outputSize];
+    for (int i = 0; i < inputSize; i++) {
+      System.arraycopy(weights[i], 0, flatWeights, i * outputSize, outputSize);
+    }
+    var bias = vertex.getLayer().getParam(DefaultParamInitializer.BIAS_KEY);
+    var flatBias = bias == null ? new float[outputSize] : bias.toFloatVector();
+    return Optional.of(new Layer(inputSize, outputSize, flatWeights, flatBias, activation.get()));
+  }
+
+  /**
+   * The supported activation equal to the layer's, which excludes variants such as a capped ReLU.
+   */
+  private static Optional<Activation> activation(IActivation activationFn) {
+    return SUPPORTED_ACTIVATIONS.stream()
+      .filter(a -> a.getActivationFunction().equals(activationFn))
+      .findFirst();
+  }
+
+
+  @Override
+  public double[][] output(InputBuffer input) {
+    var values = input.getValues();
+    if (values.length != input.getRows() * inputSize) {
+      throw new IllegalArgumentException("Expected " + inputSize + " values per row but got "
+        + values.length / input.getRows());
+    }
+    var outputs = new double[input.getRows()][];
+    var activations = new float[layers.size() + 1][];
+    for (int l = 0; l < layers.size(); l++) {
+      activations[l + 1] = new float[layers.get(l).getOutputSize()];
+    }
+
+    for (int row = 0; row < input.getRows(); row++) {
+      for (int l = 0; l < layers.size(); l++) {
+        if (l == 0) {
+          layers.get(0).forward(values, row * inputSize, activations[1]);
+        } else {
+          layers.get(l).forward(activations[l], 0, activations[l + 1]);
+        }
+      }
+      var last = activations[layers.size()];
+      outputs[row] = new double[last.length];
+      for (int i = 0; i < last.length; i++) {
+        outputs[row][i] = last[i];
+      }
+    }
+    return outputs;
+  }
+
+
+  @Override
+  public long getEstimatedBytes() {
+    return layers.stream()
+      .mapToLong(l -> (long) Float.BYTES * (l.getWeights().length + l.getBias().length))
+      .sum();
+  }
+
+
+  /**
+   * Nothing to release, the weights are on the heap.
+   */
+  @Override
+  public void close() {
+  }
+
+
+  @Value
+  private static class Layer {
+    int inputSize;
+    int outputSize;
+    float[] weights;
+    float[] bias;
+    Activation activation;
+
+    void forward(float[] input, int offset, float[] output) {
+      System.arraycopy(bias, 0, output, 0, outputSize);
+      for (int i = 0; i < inputSize; i++) {
+        float x = input[offset + i];
+        if (x == 0) {
+          continue;
+        }
+        int w = i * outputSize;
+        for (int o = 0; o < outputSize; o++) {
+          output[o] += x * weights[w + o];
+        }
+      }
+      activate(output);
+    }
+
+    private void activate(float[] output) {
+      switch (activation) {
+        case IDENTITY:
+          break;
+        case RELU:
+          for (int o = 0; o < outputSize; o++) {
+            output[o] = Math.max(0, output[o]);
+          }
+          break;
+        case SIGMOID:
+          for (int o = 0; o < outputSize; o++) {
+            output[o] = (float) (1 / (1 + Math.exp(-output[o])));
+          }
+          break;
+        case TANH:
+          for (int o = 0; o < outputSize; o++) {
+            output[o] = (float) Math.tanh(output[o]);
+          }
+          break;
+        case SOFTMAX:
+          float max = Float.NEGATIVE_INFINITY;
+          for (int o = 0; o < outputSize; o++) {
+            max = Math.max(max, output[o]);
+          }
+          double sum = 0;
+          for (int o = 0; o < outputSize; o++) {
+            output[o] = (float) Math.exp(output[o] - max);
+            sum += output[o];
+          }
+          for (int o = 0; o < outputSize; o++) {
+            output[o] /= sum;
+          }
+          break;
+        default:
+          throw new IllegalStateException("Unsupported activation " + activation);
+      }
+    }
+  }
+}
@@ -0,0 +1,306 @@
+package dev.jamesleach.neural.net;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import dev.jamesleach.neural.net.NetworkStorageFormat.Header;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Local disk copy of networks held by a slower, usually remote, loader.
+ * <p>
+ * Entries are addressed by network ID and the {@link NetworkLoader#version} reported by the delegate,
+ * which is checked on every load so a changed network is never served from disk.
+ * A network is only cached if its version is the same after loading as before, so content is never
+ * cached under the version it replaced.
+ * The least recently used entries are deleted once the cache grows over its size limit,
+ * other than entries whose binary has been returned and not yet released.
+ * Access times are kept as file modification times so the order survives a restart.
+ * When the delegate reports no version, e.g. it cannot be reached, the most recently used entry for the ID is served.
+ * Networks from a delegate without versions are not cached.
+ */
+@Slf4j
+public class DiskCachingNetworkStorage implements NetworkLoader, NetworkSaver {
+  private static final String HEADER_SUFFIX = ".json";
+  private static final String BINARY_SUFFIX = ".bin";
+
+  private final NetworkLoader loader;
+  private final NetworkSaver saver;
+  private final ObjectMapper objectMapper;
+  private final Path dir;
+  private final long maxSizeBytes;
+
+  // Entry key -> size in bytes, in least to most recently used order
+  private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+  // Entry key -> binaries returned and not yet released
+  private final Map<String, Integer> pins = new HashMap<>();
+  private long sizeBytes;
+
+  @SneakyThrows
+  public DiskCachingNetworkStorage(@NonNull NetworkLoader loader,
+                                   @NonNull NetworkSaver saver,
+                                   @NonNull ObjectMapper objectMapper,
+                                   @NonNull Path dir,
+                                   long maxSizeBytes) {
+    this.loader = loader;
+    this.saver = saver;
+    this.objectMapper = objectMapper;
+    this.dir = dir;
+    this.maxSizeBytes = maxSizeBytes;
+
+    Files.createDirectories(dir);
+    readExistingEntries();
+    log.info("Caching networks in {}, {} of {} bytes used", dir, sizeBytes, maxSizeBytes);
+  }
+
+
+  @Override
+  public Optional<SerializedNetwork> load(@NonNull String id) {
+    var version = loader.version(id);
+    if (version.isEmpty()) {
+      var latest = readLatestEntry(id);
+      if (latest.isPresent()) {
+        log.warn("No version of network '{}', serving the most recently used copy from disk", id);
+        return latest;
+      }
+      return loader.load(id);
+    }
+
+    var key = key(id, version.get());
+    var cached = readEntry(key);
+    if (cached.isPresent()) {
+      log.info("Network '{}' version {} served from disk", id, version.get());
+      return cached;
+    }
+
+    var network = loader.load(id);
+    if (network.isEmpty()) {
+      return network;
+    }
+    // Changed while downloading, so it is unknown which version was downloaded
+    var loadedVersion = loader.version(id);
+    if (!version.equals(loadedVersion)) {
+      log.info("Network '{}' changed from version {} to {} while loading, not caching it",
+        id, version.get(), loadedVersion.orElse(null));
+      return network;
+    }
+    return Optional.of(writeEntry(key, network.get()));
+  }
+
+
+  @Override
+  public Optional<String> version(@NonNull String id) {
+    return loader.version(id);
+  }
+
+
+  /**
+   * Saved straight to the delegate, the new version is cached when it is next loaded.
+   */
+  @Override
+  public void save(@NonNull SerializedNetwork network) {
+    saver.save(network);
+  }
+
+
+  /**
+   * An entry that is missing or cannot be read, for example deleted by hand, is discarded.
+   */
+  private synchronized Optional<SerializedNetwork> readEntry(String key) {
+    if (entries.get(key) == null) {
+      return Optional.empty();
+    }
+    try {
+      var header = objectMapper.readValue(headerFile(key).toFile(), Header.class);
+      Files.setLastModifiedTime(binaryFile(key), FileTime.fromMillis(System.currentTimeMillis()));
+      return Optional.of(NetworkStorageFormat.fromHeader(header, pin(key)));
+    } catch (IOException | RuntimeException e) {
+      log.warn("Discarding unreadable cache entry {}", key, e);
+      deleteEntry(key);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * The most recently used entry for the network, whatever its version.
+   */
+  private synchronized Optional<SerializedNetwork> readLatestEntry(String id) {
+    var keys = new ArrayList<>(entries.keySet());
+    Collections.reverse(keys);
+    for (var key : keys) {
+      try {
+        if (id.equals(objectMapper.readValue(headerFile(key).toFile(), Header.class).getId())) {
+          return readEntry(key);
+        }
+      } catch (IOException e) {
+        // Discarded if it is ever read by version
+        log.debug("Skipping unreadable cache entry {}", key, e);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Move or copy into the cache, release the original and return the network backed by the cached copy.
+   * The header is moved into place last so a partly written entry is never read.
+   */
+  @SneakyThrows
+  private SerializedNetwork writeEntry(String key, SerializedNetwork network) {
+    var tempBinary = Files.createTempFile(dir, key, ".tmp");
+    var tempHeader = Files.createTempFile(dir, key, ".tmp");
+    try {
+      var binary = network.getNetworkBinary();
+      try {
+        if (!binary.moveTo(tempBinary)) {
+          try (var in = binary.openStream()) {
+            Files.copy(in, tempBinary, StandardCopyOption.REPLACE_EXISTING);
+          }
+        }
+      } finally {
+        binary.release();
+      }
+      objectMapper.writeValue(tempHeader.toFile(), NetworkStorageFormat.header(network));
+
+      synchronized (this) {
+        long size = Files.size(tempBinary);
+        Files.move(tempBinary, binaryFile(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(tempHeader, headerFile(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        var previous = entries.put(key, size);
+        sizeBytes += size - (previous == null ? 0 : previous);
+        var pinned = pin(key);
+        evict();
+        return new SerializedNetwork(network.getId(), network.getDataShape(), pinned);
+      }
+    } finally {
+      Files.deleteIfExists(tempBinary);
+      Files.deleteIfExists(tempHeader);
+    }
+  }
+
+  /**
+   * The entry's binary, which keeps the entry from being evicted until it is released.
+   */
+  private NetworkBinary pin(String key) {
+    pins.merge(key, 1, Integer::sum);
+    var file = binaryFile(key);
+    var released = new AtomicBoolean();
+    return new NetworkBinary() {
+      @Override
+      public InputStream openStream() throws IOException {
+        return Files.newInputStream(file);
+      }
+
+      @Override
+      public Optional<Path> file() {
+        return Optional.of(file);
+      }
+
+      @Override
+      public void release() {
+        if (released.compareAndSet(false, true)) {
+          unpin(key);
+        }
+      }
+    };
+  }
+
+  private synchronized void unpin(String key) {
+    pins.computeIfPresent(key, (k, count) -> count == 1 ? null : count - 1);
+    evict();
+  }
+
+  /**
+   * Delete least recently used entries, other than those pinned, until under the size limit.
+   */
+  private void evict() {
+    var iterator = entries.entrySet().iterator();
+    while (sizeBytes > maxSizeBytes && iterator.hasNext()) {
+      var entry = iterator.next();
+      if (pins.containsKey(entry.getKey())) {
+        continue;
+      }
+      log.info("Evicting cached network {} of {} bytes", entry.getKey(), entry.getValue());
+      iterator.remove();
+      sizeBytes -= entry.getValue();
+      deleteFiles(entry.getKey());
+    }
+  }
+
+  private void deleteEntry(String key) {
+    var size = entries.remove(key);
+    if (size != null) {
+      sizeBytes -= size;
+    }
+    deleteFiles(key);
+  }
+
+  private void deleteFiles(String key) {
+    try {
+      Files.deleteIfExists(headerFile(key));
+      Files.deleteIfExists(binaryFile(key));
+    } catch (IOException e) {
+      log.warn("Could not delete cache entry {}", key, e);
+    }
+  }
+
+  /**
+   * Entries with both files, oldest first. Leftover temporary files are removed.
+   */
+  private void readExistingEntries() throws IOException {
+    Map<String, Long> modified;
+    try (var files = Files.list(dir)) {
+      modified = files
+        .filter(f -> {
+          if (f.getFileName().toString().endsWith(".tmp")) {
+            f.toFile().delete();
+            return false;
+          }
+          return f.getFileName().toString().endsWith(BINARY_SUFFIX);
+        })
+        .filter(f -> Files.exists(headerFile(keyOf(f))))
+        .collect(Collectors.toMap(this::keyOf, f -> f.toFile().lastModified()));
+    }
+    modified.entrySet().stream()
+      .sorted(Map.Entry.comparingByValue(Comparator.naturalOrder()))
+      .forEach(e -> {
+        long size = binaryFile(e.getKey()).toFile().length();
+        entries.put(e.getKey(), size);
+        sizeBytes += size;
+      });
+  }
+
+  private String keyOf(Path binaryFile) {
+    var name = binaryFile.getFileName().toString();
+    return name.substring(0, name.length() - BINARY_SUFFIX.length());
+  }
+
+  private String key(String id, String version) {
+    return Hashing.sha256().hashString(id + '\0' + version, StandardCharsets.UTF_8).toString();
+  }
+
+  private Path headerFile(String key) {
+    return dir.resolve(key + HEADER_SUFFIX);
+  }
+
+  private Path binaryFile(String key) {
+    return dir.resolve(key + BINARY_SUFFIX);
+  }
+}
@@ -0,0 +1,97 @@
+package dev.jamesleach.neural.net;
+
+import dev.jamesleach.neural.data.DataShape;
+import dev.jamesleach.neural.data.InputBuffer;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.conf.CacheMode;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.memory.MemoryUseMode;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.memory.enums.ResetPolicy;
+import org.nd4j.linalg.api.memory.enums.SpillPolicy;
+import org.nd4j.linalg.factory.Nd4j;
+
+/**
+ * Forward pass through DL4J, on a pool of graph replicas.
+ * <p>
+ * With workspaces enabled the activations are placed in the graph's inference workspaces and the output in a
+ * workspace per thread, all of which are sized on first use and then reused, so a forward pass makes no native
+ * allocations once warm. Only the output values are copied out, onto the heap.
+ */
+@Slf4j
+class GraphInferenceEngine implements InferenceEngine {
+  private static final String OUTPUT_WORKSPACE_ID = "network-output";
+  private static final WorkspaceConfiguration OUTPUT_WORKSPACE = WorkspaceConfiguration.builder()
+    .initialSize(0)
+    .overallocationLimit(0.2)
+    .policyAllocation(AllocationPolicy.OVERALLOCATE)
+    .policyLearning(LearningPolicy.FIRST_LOOP)
+    .policyReset(ResetPolicy.BLOCK_LEFT)
+    .policySpill(SpillPolicy.REALLOCATE)
+    .build();
+
+  private final NetworkReplicaPool replicas;
+  private final boolean workspacesEnabled;
+  private final long bytesPerReplica;
+
+  GraphInferenceEngine(ComputationGraph graph, DataShape dataShape, int maxReplicas, boolean workspacesEnabled) {
+    // Replicas are cloned with the same configuration
+    graph.getConfiguration().setInferenceWorkspaceMode(workspacesEnabled ? WorkspaceMode.ENABLED : WorkspaceMode.NONE);
+    this.replicas = new NetworkReplicaPool(graph, maxReplicas);
+    this.workspacesEnabled = workspacesEnabled;
+    this.bytesPerReplica = estimateBytes(graph, dataShape);
+  }
+
+
+  /**
+   * Only replicas created so far are counted, each holds its own copy of the parameters.
+   */
+  @Override
+  public long getEstimatedBytes() {
+    return bytesPerReplica * replicas.getReplicaCount();
+  }
+
+
+  @Override
+  public double[][] output(InputBuffer input) {
+    if (!workspacesEnabled) {
+      // Only one output supported
+      return replicas.withReplica(graph ->
+        graph.output(NetworkPrecision.matchDataType(input.toINDArray(), graph))[0].toDoubleMatrix());
+    }
+    return replicas.withReplica(graph -> {
+      // Created before the workspace is active, the input outlives it
+      var array = NetworkPrecision.matchDataType(input.toINDArray(), graph);
+      try (var workspace = Nd4j.getWorkspaceManager().getAndActivateWorkspace(OUTPUT_WORKSPACE, OUTPUT_WORKSPACE_ID)) {
+        return graph.output(false, workspace, array)[0].toDoubleMatrix();
+      }
+    });
+  }
+
+
+  @Override
+  public void close() {
+    replicas.close();
+  }
+
+
+  /**
+   * Parameters plus inference activations for a single row, per replica.
+   */
+  private static long estimateBytes(ComputationGraph graph, DataShape dataShape) {
+    var dataType = graph.params().dataType();
+    long bytes = graph.numParams() * dataType.width();
+    try {
+      bytes = Math.max(bytes, graph.getConfiguration()
+        .getMemoryReport(InputType.convolutional(dataShape.getHeight(), dataShape.getLength(), dataShape.getDepth()))
+        .getTotalMemoryBytes(1, MemoryUseMode.INFERENCE, CacheMode.NONE, dataType));
+    } catch (RuntimeException e) {
+      log.debug("No memory report for network, counting parameters only", e);
+    }
+    return bytes;
+  }
+}
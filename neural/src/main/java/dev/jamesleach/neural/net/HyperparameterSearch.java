@@ -0,0 +1,274 @@
+package dev.jamesleach.neural.net;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Search for the {@link CommonNetSpecification} that trains the most accurate network,
+ * training several short trials at once within a total time budget.
+ * Every trial trains on the same loaded data, each through its own iterator,
+ * and each round of successive halving trains its own copy of the earlier round's model.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class HyperparameterSearch {
+  private final NetworkTrainerBuilder trainerBuilder;
+  private final NetworkSerializer serializer;
+  private final NetworkSaver saver;
+
+
+  /**
+   * Search, log the ranked trials and save the most accurate network.
+   *
+   * @return the trials, most accurate first
+   * @throws IllegalStateException if no trial finished within the time budget
+   */
+  public List<HyperparameterTrial> searchAndSave(@NonNull String networkId, HyperparameterSearchSpecification spec) {
+    var trials = search(spec);
+    if (trials.isEmpty()) {
+      throw new IllegalStateException("No trial finished within " + spec.getTimeBudget());
+    }
+    log.info("{} search for '{}':\n{}", spec.getStrategy(), networkId, table(trials));
+    var best = trials.get(0);
+    log.info("Saving network '{}' trained with {}", networkId, best.getHyperparameters());
+    saver.save(new SerializedNetwork(networkId, spec.getTrainingData().getDataShape(),
+      serializer.serialize(best.getModel())));
+    return trials;
+  }
+
+
+  /**
+   * @return the trials that finished within the time budget, most accurate first
+   */
+  public List<HyperparameterTrial> search(@NonNull HyperparameterSearchSpecification spec) {
+    validate(spec);
+    long deadline = System.nanoTime() + spec.getTimeBudget().toNanos();
+    var executor = Executors.newFixedThreadPool(spec.getConcurrentTrials(), new ThreadFactoryBuilder()
+      .setNameFormat("hyperparameter-trial-%d")
+      .setDaemon(true)
+      .build());
+    try {
+      switch (spec.getStrategy()) {
+        case GRID:
+          return round(executor, spec, grid(spec), List.of(), spec.getTrialEpochs(), deadline);
+        case RANDOM:
+          return round(executor, spec, random(spec), List.of(), spec.getTrialEpochs(), deadline);
+        case SUCCESSIVE_HALVING:
+          return successiveHalving(executor, spec, deadline);
+        default:
+          throw new IllegalArgumentException("Unknown strategy " + spec.getStrategy());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+
+  /**
+   * Ranked trials as a table, one row per trial.
+   */
+  public static String table(List<HyperparameterTrial> trials) {
+    var table = new StringBuilder(String.format("%4s %8s %6s %12s %7s %14s %10s %9s%n",
+      "rank", "accuracy", "epochs", "learningRate", "dropout", "sizeMultiplier", "seed", "seconds"));
+    for (int i = 0; i < trials.size(); i++) {
+      var trial = trials.get(i);
+      var hyperparameters = trial.getHyperparameters();
+      table.append(String.format("%4d %8.4f %6d %12.6f %7.3f %14d %10d %9.1f%n",
+        i + 1,
+        trial.getAccuracy(),
+        trial.getEpochs(),
+        hyperparameters.getLearningRate(),
+        hyperparameters.getDropout(),
+        hyperparameters.getSizeMultiplier(),
+        hyperparameters.getSeed(),
+        trial.getTrainingTime().toMillis() / 1000.0));
+    }
+    return table.toString();
+  }
+
+  private void validate(HyperparameterSearchSpecification spec) {
+    if (spec.getConcurrentTrials() < 1 || spec.getTrialEpochs() < 1 || spec.getRandomTrials() < 1) {
+      throw new IllegalArgumentException("Concurrent trials, trial epochs and random trials must be at least 1");
+    }
+    if (spec.getLearningRates().isEmpty() || spec.getDropouts().isEmpty() || spec.getSizeMultipliers().isEmpty()
+      || spec.getSeeds().isEmpty()) {
+      throw new IllegalArgumentException("Must have at least one value of each hyper-parameter to search");
+    }
+    if (spec.getTrainingData().getDataSets().isEmpty() || spec.getEvaluationData().getDataSets().isEmpty()) {
+      throw new IllegalArgumentException("Must have training and evaluation data");
+    }
+  }
+
+  /**
+   * Train every candidate for the trial epochs, then train the better half of them for twice as many more epochs,
+   * and so on until one is left or time runs out.
+   */
+  private List<HyperparameterTrial> successiveHalving(ExecutorService executor,
+                                                      HyperparameterSearchSpecification spec,
+                                                      long deadline) {
+    // Latest trial of each candidate, including those dropped in earlier rounds
+    var latest = new LinkedHashMap<CommonNetSpecification, HyperparameterTrial>();
+    int epochs = spec.getTrialEpochs();
+    var round = round(executor, spec, random(spec), List.of(), epochs, deadline);
+    while (!round.isEmpty()) {
+      round.forEach(trial -> latest.put(trial.getHyperparameters(), trial));
+      if (round.size() == 1) {
+        break;
+      }
+      var survivors = round.subList(0, (round.size() + 1) / 2);
+      epochs *= 2;
+      log.info("{} candidates go on to train for {} more epochs", survivors.size(), epochs);
+      round = round(executor, spec, List.of(), survivors, epochs, deadline);
+    }
+    return ranked(latest.values());
+  }
+
+  /**
+   * Train new candidates, and continue training earlier trials, in parallel.
+   *
+   * @return the trials that finished, most accurate first
+   */
+  private List<HyperparameterTrial> round(ExecutorService executor,
+                                          HyperparameterSearchSpecification spec,
+                                          List<CommonNetSpecification> candidates,
+                                          List<HyperparameterTrial> continuing,
+                                          int epochs,
+                                          long deadline) {
+    var tasks = new ArrayList<Callable<Optional<HyperparameterTrial>>>();
+    candidates.forEach(candidate -> tasks.add(() -> train(spec, candidate, null, epochs, deadline)));
+    continuing.forEach(trial -> tasks.add(() -> train(spec, trial.getHyperparameters(), trial, epochs, deadline)));
+    var trials = new ArrayList<HyperparameterTrial>();
+    try {
+      for (var future : executor.invokeAll(tasks)) {
+        future.get().ifPresent(trials::add);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted searching hyper-parameters", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Error searching hyper-parameters", e.getCause());
+    }
+    return ranked(trials);
+  }
+
+  /**
+   * Train one candidate, carrying on from an earlier trial of it if there is one.
+   *
+   * @return the trial, or empty if out of time before an epoch finished or training failed
+   */
+  private Optional<HyperparameterTrial> train(HyperparameterSearchSpecification spec,
+                                              CommonNetSpecification hyperparameters,
+                                              HyperparameterTrial previous,
+                                              int epochs,
+                                              long deadline) {
+    long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+    if (remainingMillis <= 0) {
+      log.info("Out of time before training {}", hyperparameters);
+      return Optional.empty();
+    }
+    var timer = Stopwatch.createStarted();
+    try {
+      var result = trainerBuilder.trainer(NetworkTrainerSpecification.builder()
+        // A copy, so the earlier trial keeps the model it was scored on if this round fails or runs out of time
+        .initialModel(previous == null ? null : previous.getModel().clone())
+        .compNetworkConfiguration(spec.getNetworkConfigurationBuilder()
+          .build(hyperparameters, spec.getTrainingData().getDataShape()))
+        .trainingData(spec.getTrainingData().toDataSetIterator())
+        .evaluationData(spec.getEvaluationData().toDataSetIterator())
+        .maxTime(remainingMillis)
+        .maxTimeUnit(TimeUnit.MILLISECONDS)
+        .maxEpochs(epochs)
+        // Already in memory
+        .prefetchBatches(0)
+        .build())
+        .fit();
+      var model = result.getBestModel();
+      if (model == null) {
+        log.info("Out of time before an epoch of {} finished", hyperparameters);
+        return Optional.empty();
+      }
+      var trial = new HyperparameterTrial(
+        hyperparameters,
+        (previous == null ? 0 : previous.getEpochs()) + result.getTotalEpochs(),
+        model.evaluate(spec.getEvaluationData().toDataSetIterator()).accuracy(),
+        (previous == null ? Duration.ZERO : previous.getTrainingTime()).plus(timer.elapsed()),
+        model);
+      log.info("Accuracy {} after {} epochs of {}", trial.getAccuracy(), trial.getEpochs(), hyperparameters);
+      return Optional.of(trial);
+    } catch (RuntimeException e) {
+      // e.g. diverged, the other trials carry on
+      log.warn("Failed training {}", hyperparameters, e);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Every combination of the values.
+   */
+  private List<CommonNetSpecification> grid(HyperparameterSearchSpecification spec) {
+    var candidates = new ArrayList<CommonNetSpecification>();
+    for (double learningRate : spec.getLearningRates()) {
+      for (double dropout : spec.getDropouts()) {
+        for (int sizeMultiplier : spec.getSizeMultipliers()) {
+          for (long seed : spec.getSeeds()) {
+            candidates.add(CommonNetSpecification.builder()
+              .learningRate(learningRate)
+              .dropout(dropout)
+              .sizeMultiplier(sizeMultiplier)
+              .seed(seed)
+              .build());
+          }
+        }
+      }
+    }
+    return candidates;
+  }
+
+  /**
+   * Random samples within the range of the values.
+   */
+  private List<CommonNetSpecification> random(HyperparameterSearchSpecification spec) {
+    var random = new Random(spec.getRandomSeed());
+    double minLogRate = Math.log(Collections.min(spec.getLearningRates()));
+    double maxLogRate = Math.log(Collections.max(spec.getLearningRates()));
+    double minDropout = Collections.min(spec.getDropouts());
+    double maxDropout = Collections.max(spec.getDropouts());
+    var candidates = new ArrayList<CommonNetSpecification>();
+    for (int i = 0; i < spec.getRandomTrials(); i++) {
+      candidates.add(CommonNetSpecification.builder()
+        .learningRate(Math.exp(minLogRate + random.nextDouble() * (maxLogRate - minLogRate)))
+        .dropout(minDropout + random.nextDouble() * (maxDropout - minDropout))
+        .sizeMultiplier(spec.getSizeMultipliers().get(random.nextInt(spec.getSizeMultipliers().size())))
+        .seed(spec.getSeeds().get(random.nextInt(spec.getSeeds().size())))
+        .build());
+    }
+    return candidates;
+  }
+
+  private List<HyperparameterTrial> ranked(Collection<HyperparameterTrial> trials) {
+    return trials.stream()
+      .sorted(Comparator.comparingDouble(HyperparameterTrial::getAccuracy).reversed())
+      .collect(Collectors.toList());
+  }
+}
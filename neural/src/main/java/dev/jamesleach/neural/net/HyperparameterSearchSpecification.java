@@ -0,0 +1,85 @@
+package dev.jamesleach.neural.net;
+
+import dev.jamesleach.neural.data.LabeledDataSetCollection;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Configuration for {@link HyperparameterSearch}
+ */
+@Data
+@Builder
+public class HyperparameterSearchSpecification {
+  @NonNull
+  private final NetworkConfigurationBuilder networkConfigurationBuilder;
+  /**
+   * Loaded once and shared by every trial.
+   */
+  @NonNull
+  private final LabeledDataSetCollection trainingData;
+  /**
+   * Trials are ranked by accuracy on this data.
+   */
+  @NonNull
+  private final LabeledDataSetCollection evaluationData;
+  @NonNull
+  private final Strategy strategy;
+  /**
+   * Total time for the whole search, trials not started in time are skipped.
+   */
+  @NonNull
+  private final Duration timeBudget;
+  /**
+   * Trials trained at once. Each trial's native operations already run on every core, and ND4J's thread limit
+   * is global so cannot be set per trial, so more than a few trials at once only add contention.
+   */
+  @Builder.Default
+  private final int concurrentTrials = 2;
+  /**
+   * Epochs each trial trains for, or for successive halving the epochs of the first round.
+   */
+  @Builder.Default
+  private final int trialEpochs = 1;
+  /**
+   * Trials to sample for random search and successive halving.
+   */
+  @Builder.Default
+  private final int randomTrials = 16;
+  @Builder.Default
+  private final long randomSeed = 1234;
+
+  /**
+   * Values to search. Grid search tries every combination, random sampling is log-uniform between
+   * the lowest and highest learning rates, uniform between the lowest and highest dropouts,
+   * and picks from the size multipliers and seeds.
+   */
+  @Builder.Default
+  private final List<Double> learningRates = List.of(0.001, CommonNetSpecification.DEFAULT_LEARNING_RATE, 0.02);
+  @Builder.Default
+  private final List<Double> dropouts = List.of(0.0, 0.2, 0.5);
+  @Builder.Default
+  private final List<Integer> sizeMultipliers = List.of(1, 2);
+  @Builder.Default
+  private final List<Long> seeds = List.of(1234L);
+
+
+  public enum Strategy {
+    /**
+     * Every combination of the values, each trained for the trial epochs.
+     */
+    GRID,
+    /**
+     * Random samples of the values, each trained for the trial epochs.
+     */
+    RANDOM,
+    /**
+     * Random samples trained in rounds, only the better half going on to the next round
+     * which trains them for twice as many more epochs.
+     */
+    SUCCESSIVE_HALVING
+  }
+}
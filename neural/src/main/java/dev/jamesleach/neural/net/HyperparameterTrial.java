@@ -0,0 +1,28 @@
+package dev.jamesleach.neural.net;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+
+import java.time.Duration;
+
+/**
+ * The outcome of training a network with one set of hyper-parameters in a {@link HyperparameterSearch}.
+ */
+@Data
+public class HyperparameterTrial {
+  private final CommonNetSpecification hyperparameters;
+  /**
+   * Total epochs trained, over all rounds.
+   */
+  private final int epochs;
+  private final double accuracy;
+  /**
+   * Total time spent training, over all rounds.
+   */
+  private final Duration trainingTime;
+  @ToString.Exclude
+  @EqualsAndHashCode.Exclude
+  private final ComputationGraph model;
+}
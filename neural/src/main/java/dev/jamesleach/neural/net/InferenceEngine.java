@@ -0,0 +1,23 @@
+package dev.jamesleach.neural.net;
+
+import dev.jamesleach.neural.data.InputBuffer;
+
+/**
+ * Forward pass of a loaded network, safe to call from many threads at once.
+ */
+interface InferenceEngine {
+  /**
+   * @return the output probabilities, [row][label], of every row of the input
+   */
+  double[][] output(InputBuffer input);
+
+  /**
+   * @return estimated memory currently held by the engine, which may grow as it is used
+   */
+  long getEstimatedBytes();
+
+  /**
+   * Release the engine's memory, only called once no requests are using it.
+   */
+  void close();
+}
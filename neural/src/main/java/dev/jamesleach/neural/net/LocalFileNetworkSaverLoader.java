@@ -1,24 +1,29 @@
 package dev.jamesleach.neural.net;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.jamesleach.neural.net.NetworkStorageFormat.Header;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Optional;
 
+/**
+ * Networks stored as a header file and a model file under ./saved-networks.
+ * Legacy single JSON files are read if there is no newer version, decoding the model into a temporary file
+ * that is deleted when the network binary is released.
+ */
 @Component
 @Slf4j
 @RequiredArgsConstructor
 class LocalFileNetworkSaverLoader implements NetworkLoader, NetworkSaver {
-  private static final Charset CHARSET = StandardCharsets.UTF_8;
   private static final Path DIR = Paths.get("./saved-networks");
 
   private final ObjectMapper objectMapper;
@@ -28,30 +33,78 @@ class LocalFileNetworkSaverLoader implements NetworkLoader, NetworkSaver {
   public Optional<SerializedNetwork> load(@NonNull String id) {
     log.info("Loading network '{}'", id);
     initDir();
-    if (!file(id).toFile().exists()) {
-      log.info("No file '{}'", file(id));
-      return Optional.empty();
+    if (headerFile(id).toFile().exists()) {
+      var header = objectMapper.readValue(headerFile(id).toFile(), Header.class);
+      return Optional.of(NetworkStorageFormat.fromHeader(header, NetworkBinary.ofFile(binaryFile(id))));
     }
-    String json = Files.readString(file(id));
-    SerializedNetwork net = objectMapper.readValue(json, SerializedNetwork.class);
-    return Optional.of(net);
+    if (legacyFile(id).toFile().exists()) {
+      log.info("Reading legacy file '{}'", legacyFile(id));
+      var binary = Files.createTempFile(id, ".bin");
+      try (var in = Files.newInputStream(legacyFile(id))) {
+        return Optional.of(NetworkStorageFormat.readLegacy(objectMapper, in, binary));
+      } catch (IOException | RuntimeException e) {
+        Files.deleteIfExists(binary);
+        throw e;
+      }
+    }
+    log.info("No file '{}'", headerFile(id));
+    return Optional.empty();
+  }
+
+  /**
+   * Modification time of the file that would be loaded.
+   */
+  @Override
+  public Optional<String> version(@NonNull String id) {
+    if (headerFile(id).toFile().exists()) {
+      return Optional.of(NetworkStorageFormat.VERSION + "-" + headerFile(id).toFile().lastModified());
+    }
+    if (legacyFile(id).toFile().exists()) {
+      return Optional.of(NetworkStorageFormat.LEGACY_VERSION + "-" + legacyFile(id).toFile().lastModified());
+    }
+    return Optional.empty();
   }
 
+  /**
+   * The header is written last so a partly saved network is never loaded.
+   */
   @SneakyThrows
   @Override
   public void save(@NonNull SerializedNetwork network) {
     log.info("Saving network '{}'", network.getId());
     initDir();
-    String json = objectMapper.writeValueAsString(network);
-    Files.write(file(network.getId()), json.getBytes(CHARSET));
+    var tempBinary = Files.createTempFile(DIR, network.getId(), ".tmp");
+    var tempHeader = Files.createTempFile(DIR, network.getId(), ".tmp");
+    try {
+      try (var in = network.getNetworkBinary().openStream()) {
+        Files.copy(in, tempBinary, StandardCopyOption.REPLACE_EXISTING);
+      }
+      objectMapper.writeValue(tempHeader.toFile(), NetworkStorageFormat.header(network));
+
+      Files.deleteIfExists(headerFile(network.getId()));
+      Files.move(tempBinary, binaryFile(network.getId()), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      Files.move(tempHeader, headerFile(network.getId()), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      // Already moved unless the save failed
+      Files.deleteIfExists(tempBinary);
+      Files.deleteIfExists(tempHeader);
+    }
+  }
+
+  private Path headerFile(String id) {
+    return DIR.resolve(id + ".net" + NetworkStorageFormat.VERSION + ".json");
+  }
+
+  private Path binaryFile(String id) {
+    return DIR.resolve(id + ".net" + NetworkStorageFormat.VERSION + ".bin");
   }
 
-  private Path file(String id) {
-    return DIR.resolve(id + ".net" + SerializedNetwork.JSON_VERSION + ".json");
+  private Path legacyFile(String id) {
+    return DIR.resolve(id + ".net" + NetworkStorageFormat.LEGACY_VERSION + ".json");
   }
 
   private void initDir() {
     if (!DIR.toFile().exists() && !DIR.toFile().mkdir())
       throw new IllegalStateException("Could not create working directory " + DIR);
   }
-}
\ No newline at end of file
+}
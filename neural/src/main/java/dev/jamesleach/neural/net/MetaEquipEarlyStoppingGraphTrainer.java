@@ -4,18 +4,20 @@ import lombok.Getter;
 import org.deeplearning4j.earlystopping.EarlyStoppingConfiguration;
 import org.deeplearning4j.earlystopping.trainer.EarlyStoppingGraphTrainer;
 import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 
 /**
  * EarlyStoppingGraphTrainer + NetworkTrainerSpecification
  */
 @Getter
-public class MetaEquipEarlyStoppingGraphTrainer extends EarlyStoppingGraphTrainer {
+public class MetaEquipEarlyStoppingGraphTrainer extends EarlyStoppingGraphTrainer implements NetworkTrainer {
   private final NetworkTrainerSpecification specification;
 
   MetaEquipEarlyStoppingGraphTrainer(EarlyStoppingConfiguration<ComputationGraph> esConfig,
                                      ComputationGraph net,
+                                     DataSetIterator trainingData,
                                      NetworkTrainerSpecification specification) {
-    super(esConfig, net, specification.getTrainingData(), null);
+    super(esConfig, net, trainingData, null);
     this.specification = specification;
   }
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package dev.jamesleach.neural.net;
+
+import lombok.Getter;
+import org.deeplearning4j.earlystopping.EarlyStoppingConfiguration;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.parallelism.EarlyStoppingParallelTrainer;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+/**
+ * EarlyStoppingParallelTrainer + NetworkTrainerSpecification
+ */
+@Getter
+public class MetaEquipEarlyStoppingParallelTrainer extends EarlyStoppingParallelTrainer<ComputationGraph>
+  implements NetworkTrainer {
+  private final NetworkTrainerSpecification specification;
+
+  MetaEquipEarlyStoppingParallelTrainer(EarlyStoppingConfiguration<ComputationGraph> esConfig,
+                                        ComputationGraph net,
+                                        DataSetIterator trainingData,
+                                        int prefetchBatches,
+                                        NetworkTrainerSpecification specification) {
+    super(esConfig, net, trainingData, null, specification.getWorkers(), prefetchBatches,
+      specification.getAveragingFrequency());
+    this.specification = specification;
+  }
+}
@@ -0,0 +1,116 @@
+package dev.jamesleach.neural.net;
+
+import lombok.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * The raw bytes of a serialized {@link org.deeplearning4j.nn.graph.ComputationGraph}.
+ * Bytes are read on demand so a network held in a file is never copied into memory up front.
+ * Whoever loads a network calls {@link #release()} once it has finished reading the bytes.
+ */
+public interface NetworkBinary {
+  /**
+   * A new stream over the bytes, closed by the caller.
+   */
+  InputStream openStream() throws IOException;
+
+
+  /**
+   * The local file holding exactly these bytes, if there is one.
+   */
+  default Optional<Path> file() {
+    return Optional.empty();
+  }
+
+
+  /**
+   * Move the bytes into a file rather than copying them, only possible for a temporary file
+   * on the same file system. The bytes must not be read from this binary afterwards.
+   *
+   * @return false if the bytes were not moved and must be copied instead
+   */
+  default boolean moveTo(Path target) throws IOException {
+    return false;
+  }
+
+
+  /**
+   * Free anything only held for reading the bytes, such as a temporary file.
+   * The bytes must not be read afterwards.
+   */
+  default void release() {
+  }
+
+
+  static NetworkBinary ofBytes(@NonNull byte[] bytes) {
+    return () -> new ByteArrayInputStream(bytes);
+  }
+
+
+  static NetworkBinary ofFile(@NonNull Path file) {
+    return new NetworkBinary() {
+      @Override
+      public InputStream openStream() throws IOException {
+        return Files.newInputStream(file);
+      }
+
+      @Override
+      public Optional<Path> file() {
+        return Optional.of(file);
+      }
+    };
+  }
+
+
+  /**
+   * A file only kept until the bytes have been read, deleted on {@link #release()}.
+   */
+  static NetworkBinary ofTemporaryFile(@NonNull Path file) {
+    return new NetworkBinary() {
+      @Override
+      public InputStream openStream() throws IOException {
+        return Files.newInputStream(file);
+      }
+
+      @Override
+      public Optional<Path> file() {
+        return Optional.of(file);
+      }
+
+      @Override
+      public boolean moveTo(Path target) throws IOException {
+        try {
+          Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+          return true;
+        } catch (AtomicMoveNotSupportedException e) {
+          // A different file system
+          return false;
+        }
+      }
+
+      @Override
+      public void release() {
+        // Best effort, the file is in the temporary directory
+        file.toFile().delete();
+      }
+    };
+  }
+
+
+  /**
+   * Bytes held as Base64 by the legacy JSON format, decoded as they are read.
+   */
+  static NetworkBinary ofBase64(@NonNull String base64) {
+    return () -> Base64.getDecoder().wrap(new ByteArrayInputStream(base64.getBytes(StandardCharsets.ISO_8859_1)));
+  }
+}
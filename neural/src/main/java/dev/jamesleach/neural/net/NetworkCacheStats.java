@@ -0,0 +1,40 @@
+package dev.jamesleach.neural.net;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.google.common.cache.CacheStats;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of {@link SavedNetworkRunner} cache statistics.
+ * Load counts and times include background refreshes.
+ */
+@Data
+@RequiredArgsConstructor(onConstructor = @__(@JsonCreator))
+public class NetworkCacheStats {
+  private final long size;
+  private final long hitCount;
+  private final long missCount;
+  private final long loadSuccessCount;
+  private final long loadExceptionCount;
+  private final long averageLoadMillis;
+  private final long evictionCount;
+  /**
+   * Estimated memory used by cached networks, see {@link NetworkRunnerSpecification#getMaxCacheBytes()}.
+   */
+  private final long estimatedBytes;
+
+  static NetworkCacheStats from(CacheStats stats, long size, long estimatedBytes) {
+    return new NetworkCacheStats(
+      size,
+      stats.hitCount(),
+      stats.missCount(),
+      stats.loadSuccessCount(),
+      stats.loadExceptionCount(),
+      TimeUnit.NANOSECONDS.toMillis((long) stats.averageLoadPenalty()),
+      stats.evictionCount(),
+      estimatedBytes);
+  }
+}
@@ -0,0 +1,250 @@
+package dev.jamesleach.neural.net;
+
+import com.google.common.hash.Hashing;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Checkpoints of a network during training, in a directory of their own.
+ * <p>
+ * Checkpoints are grouped in a sub-directory per configuration, named by a hash of it,
+ * so a network trained again with different hyper-parameters starts a new group rather than clashing.
+ * Each group's configuration is written once, as JSON.
+ * Each checkpoint is then a gzipped file of the epoch and iteration counts, the parameters and,
+ * if enabled, the updater state, so is a fraction of the size of a full {@link NetworkSerializer} model.
+ * Checkpoint IDs are sequence numbers across all groups, any of which can be restored to a full network.
+ * Only the most recent checkpoints are kept, along with the groups they are in.
+ */
+@Slf4j
+public class NetworkCheckpointStore {
+  private static final int MAGIC = 0x4e434b50; // NCKP
+  private static final int VERSION = 1;
+  private static final String CONFIG_FILE = "configuration.json";
+  private static final String CHECKPOINT_SUFFIX = ".ckpt.gz";
+  private static final int CONFIG_HASH_LENGTH = 16;
+  private static final Pattern CHECKPOINT_FILE = Pattern.compile("(\\d{6})" + Pattern.quote(CHECKPOINT_SUFFIX));
+
+  private final Path dir;
+  private final boolean saveUpdaterState;
+  private final int maxCheckpoints;
+
+  /**
+   * Store that keeps every checkpoint.
+   *
+   * @param dir              directory for one network's checkpoints, created if needed
+   * @param saveUpdaterState also save the updater state, so training can resume exactly where it was
+   */
+  public NetworkCheckpointStore(@NonNull Path dir, boolean saveUpdaterState) {
+    this(dir, saveUpdaterState, Integer.MAX_VALUE);
+  }
+
+
+  /**
+   * @param dir              directory for one network's checkpoints, created if needed
+   * @param saveUpdaterState also save the updater state, so training can resume exactly where it was
+   * @param maxCheckpoints   the most recent checkpoints to keep, older ones are deleted on save
+   */
+  public NetworkCheckpointStore(@NonNull Path dir, boolean saveUpdaterState, int maxCheckpoints) {
+    if (maxCheckpoints < 1) {
+      throw new IllegalArgumentException("Must keep at least one checkpoint but got " + maxCheckpoints);
+    }
+    this.dir = dir;
+    this.saveUpdaterState = saveUpdaterState;
+    this.maxCheckpoints = maxCheckpoints;
+  }
+
+
+  /**
+   * Save a checkpoint, and the configuration if this is the first with it, then delete the oldest
+   * checkpoints over the limit.
+   *
+   * @return the ID of the new checkpoint
+   */
+  public synchronized String save(@NonNull ComputationGraph graph) throws IOException {
+    var config = configurationJson(graph.getConfiguration());
+    var configDir = dir.resolve(Hashing.sha256().hashString(config, StandardCharsets.UTF_8).toString()
+      .substring(0, CONFIG_HASH_LENGTH));
+    Files.createDirectories(configDir);
+    var configFile = configDir.resolve(CONFIG_FILE);
+    if (!Files.exists(configFile)) {
+      writeAtomically(configFile, out -> out.write(config.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    var id = String.format("%06d", checkpointIds().stream().mapToInt(Integer::parseInt).max().orElse(0) + 1);
+    var file = configDir.resolve(id + CHECKPOINT_SUFFIX);
+    var updater = graph.getUpdater();
+    var updaterState = saveUpdaterState && updater != null ? updater.getStateViewArray() : null;
+    writeAtomically(file, raw -> {
+      var gzip = new GZIPOutputStream(raw, 1 << 16);
+      var out = new DataOutputStream(gzip);
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(graph.getConfiguration().getEpochCount());
+      out.writeInt(graph.getConfiguration().getIterationCount());
+      out.writeBoolean(updaterState != null);
+      Nd4j.write(graph.params(), out);
+      if (updaterState != null) {
+        Nd4j.write(updaterState, out);
+      }
+      out.flush();
+      gzip.finish();
+    });
+    log.info("Saved checkpoint {} of {} bytes in {}", id, Files.size(file), configDir);
+    prune();
+    return id;
+  }
+
+
+  /**
+   * IDs of the saved checkpoints, oldest first.
+   */
+  public List<String> checkpointIds() throws IOException {
+    return new ArrayList<>(checkpointFiles().keySet());
+  }
+
+
+  /**
+   * The most recently saved checkpoint, if there is one.
+   */
+  public Optional<String> latestCheckpointId() throws IOException {
+    var ids = checkpointIds();
+    return ids.isEmpty() ? Optional.empty() : Optional.of(ids.get(ids.size() - 1));
+  }
+
+
+  /**
+   * Rebuild the network as it was at a checkpoint.
+   *
+   * @throws IllegalArgumentException if there is no such checkpoint
+   */
+  public ComputationGraph restore(@NonNull String id) throws IOException {
+    var file = checkpointFiles().get(id);
+    if (file == null) {
+      throw new IllegalArgumentException("No checkpoint '" + id + "' in " + dir);
+    }
+    var conf = ComputationGraphConfiguration.fromJson(Files.readString(file.resolveSibling(CONFIG_FILE)));
+    INDArray params;
+    INDArray updaterState = null;
+    try (var in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(file))))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException(file + " is not a checkpoint of version " + VERSION);
+      }
+      conf.setEpochCount(in.readInt());
+      conf.setIterationCount(in.readInt());
+      boolean hasUpdaterState = in.readBoolean();
+      params = Nd4j.read(in);
+      if (hasUpdaterState) {
+        updaterState = Nd4j.read(in);
+      }
+    }
+
+    var graph = new ComputationGraph(conf);
+    graph.init(params, false);
+    if (updaterState != null) {
+      graph.getUpdater().setStateViewArray(updaterState);
+    }
+    return graph;
+  }
+
+  /**
+   * The configuration without the counts that change as it trains, which are saved with each checkpoint.
+   */
+  private String configurationJson(ComputationGraphConfiguration configuration) {
+    var conf = configuration.clone();
+    conf.setEpochCount(0);
+    conf.setIterationCount(0);
+    return conf.toJson();
+  }
+
+  /**
+   * Checkpoint ID -> file, in every configuration's directory, oldest first.
+   * Other files, such as a checkpoint copied in under another name, are ignored.
+   */
+  private TreeMap<String, Path> checkpointFiles() throws IOException {
+    var files = new TreeMap<String, Path>();
+    if (!Files.isDirectory(dir)) {
+      return files;
+    }
+    List<Path> configDirs;
+    try (var children = Files.list(dir)) {
+      configDirs = children.filter(Files::isDirectory).collect(Collectors.toList());
+    }
+    for (var configDir : configDirs) {
+      try (var children = Files.list(configDir)) {
+        children.forEach(file -> {
+          var matcher = CHECKPOINT_FILE.matcher(file.getFileName().toString());
+          if (matcher.matches()) {
+            files.put(matcher.group(1), file);
+          }
+        });
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Delete the oldest checkpoints over the limit, and the directories of configurations with none left.
+   */
+  private void prune() throws IOException {
+    var files = checkpointFiles();
+    while (files.size() > maxCheckpoints) {
+      var oldest = files.pollFirstEntry();
+      Files.deleteIfExists(oldest.getValue());
+      log.info("Deleted checkpoint {}", oldest.getKey());
+      var configDir = oldest.getValue().getParent();
+      if (files.values().stream().noneMatch(file -> file.getParent().equals(configDir))) {
+        Files.deleteIfExists(configDir.resolve(CONFIG_FILE));
+        try {
+          Files.deleteIfExists(configDir);
+        } catch (IOException e) {
+          // e.g. a temporary file being written
+          log.warn("Could not delete {}", configDir, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Write via a temporary file so a partly written file is never read.
+   */
+  private void writeAtomically(Path file, Writer writer) throws IOException {
+    var temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+    try {
+      try (var out = new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16)) {
+        writer.write(out);
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+
+  @FunctionalInterface
+  private interface Writer {
+    void write(OutputStream out) throws IOException;
+  }
+}
@@ -11,4 +11,13 @@ public interface NetworkLoader {
    * @return the saved network or Optional.empty() if no such network is found
    */
   Optional<SerializedNetwork> load(String id);
+
+  /**
+   * @param id the ID of the network
+   * @return a value that changes whenever the stored network changes, such as an ETag,
+   * or Optional.empty() if there is no such network or versions are not supported
+   */
+  default Optional<String> version(String id) {
+    return Optional.empty();
+  }
 }
@@ -0,0 +1,73 @@
+package dev.jamesleach.neural.net;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.conf.layers.BaseOutputLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.indexing.BooleanIndexing;
+import org.nd4j.linalg.indexing.conditions.Conditions;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+/**
+ * Reduced precision copies of networks for inference.
+ */
+@Slf4j
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+class NetworkPrecision {
+  private static final double INT8_MAX = 127;
+
+  /**
+   * Apply the precision options of the specification.
+   *
+   * @return the same graph, or a converted copy in which case the original is closed
+   */
+  static ComputationGraph apply(ComputationGraph graph, NetworkRunnerSpecification specification) {
+    if (specification.isQuantizeInt8()) {
+      quantizeDenseWeights(graph);
+    }
+    var dataType = specification.getInferenceDataType();
+    if (dataType == null || dataType == graph.params().dataType()) {
+      return graph;
+    }
+    log.info("Converting network from {} to {}", graph.params().dataType(), dataType);
+    var converted = graph.convertDataType(dataType);
+    graph.close();
+    return converted;
+  }
+
+
+  /**
+   * Round the weights of dense and output layers, in place, to the values a symmetric int8
+   * encoding with one scale per output can represent.
+   * The weights stay in the network's data type so this models the accuracy of int8 weights, not their size.
+   */
+  static void quantizeDenseWeights(ComputationGraph graph) {
+    for (var layer : graph.getLayers()) {
+      var conf = layer.conf().getLayer();
+      if (!(conf instanceof DenseLayer || conf instanceof BaseOutputLayer)) {
+        continue;
+      }
+      // [nIn, nOut], one scale per output
+      var weights = layer.getParam(DefaultParamInitializer.WEIGHT_KEY);
+      var scale = Transforms.abs(weights, true).max(0).reshape(1, weights.columns()).divi(INT8_MAX);
+      // An all zero column stays zero with any scale, and would otherwise divide by zero
+      BooleanIndexing.replaceWhere(scale, 1, Conditions.equals(0));
+      var quantized = Transforms.round(weights.divRowVector(scale), false);
+      weights.assign(quantized.muliRowVector(scale));
+      log.info("Quantized {} weights of layer '{}' to int8", weights.length(), conf.getLayerName());
+    }
+  }
+
+
+  /**
+   * The input, cast to the network's data type if it differs.
+   */
+  static INDArray matchDataType(INDArray input, ComputationGraph graph) {
+    var dataType = graph.params().dataType();
+    return input.dataType() == dataType ? input : input.castTo(dataType);
+  }
+}
@@ -0,0 +1,168 @@
+package dev.jamesleach.neural.net;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import dev.jamesleach.ReadinessCheck;
+import dev.jamesleach.neural.data.InputBuffer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Load the configured networks in parallel once the context is up,
+ * then warm each with synthetic forward passes at several batch sizes.
+ * A network that fails to load is retried with exponential backoff.
+ * Not ready until every network is loaded and warm, if preloading gives up
+ * it starts again the next time readiness is checked.
+ */
+@Slf4j
+@Component
+public class NetworkPreloader implements ReadinessCheck, DisposableBean {
+  private final SavedNetworkRunner runner;
+  private final List<String> networkIds;
+  private final int warmupPasses;
+  private final int[] batchSizes;
+  private final int maxAttempts;
+  private final long retryBackoffMillis;
+  private final ExecutorService executor;
+
+  private CompletableFuture<Void> preloaded;
+  private volatile boolean ready;
+
+  public NetworkPreloader(SavedNetworkRunner runner,
+                          @Value("${network-preload.ids:}") String[] networkIds,
+                          @Value("${network-preload.warmup-passes:20}") int warmupPasses,
+                          @Value("${network-preload.batch-sizes:1,8,32}") int[] batchSizes,
+                          @Value("${network-preload.max-attempts:5}") int maxAttempts,
+                          @Value("${network-preload.retry-backoff-millis:1000}") long retryBackoffMillis) {
+    if (maxAttempts < 1) {
+      throw new IllegalArgumentException("Max attempts must be at least 1 but was " + maxAttempts);
+    }
+    this.runner = runner;
+    this.networkIds = Arrays.stream(networkIds)
+      .map(String::trim)
+      .filter(id -> !id.isEmpty())
+      .distinct()
+      .collect(Collectors.toList());
+    this.warmupPasses = warmupPasses;
+    this.batchSizes = batchSizes;
+    this.maxAttempts = maxAttempts;
+    this.retryBackoffMillis = retryBackoffMillis;
+    this.executor = Executors.newFixedThreadPool(Math.max(1, this.networkIds.size()), new ThreadFactoryBuilder()
+      .setNameFormat("network-preload-%d")
+      .setDaemon(true)
+      .build());
+  }
+
+
+  @EventListener
+  public void handleContextRefresh(ContextRefreshedEvent event) {
+    preload();
+  }
+
+
+  /**
+   * Start preloading, if not already started or if an earlier attempt failed.
+   *
+   * @return completes when every network is loaded and warm
+   */
+  public synchronized CompletableFuture<Void> preload() {
+    if (preloaded == null || preloaded.isCompletedExceptionally()) {
+      log.info("Preloading networks {}", networkIds);
+      var timer = Stopwatch.createStarted();
+      preloaded = CompletableFuture.allOf(networkIds.stream()
+        .map(id -> CompletableFuture.runAsync(() -> preloadWithRetries(id), executor))
+        .toArray(CompletableFuture[]::new))
+        .whenComplete((r, e) -> {
+          if (e == null) {
+            log.info("Preloaded {} networks in {}", networkIds.size(), timer);
+            ready = true;
+          } else {
+            log.error("Preloading networks failed, staying not ready until the next attempt", e);
+          }
+        });
+    }
+    return preloaded;
+  }
+
+
+  @Override
+  public String getName() {
+    return "network-preload";
+  }
+
+
+  @Override
+  public boolean isReady() {
+    if (!ready) {
+      retryIfFailed();
+    }
+    return ready;
+  }
+
+
+  @Override
+  public void destroy() {
+    executor.shutdownNow();
+  }
+
+
+  private synchronized void retryIfFailed() {
+    if (preloaded != null && preloaded.isCompletedExceptionally()) {
+      preload();
+    }
+  }
+
+  private void preloadWithRetries(String networkId) {
+    long backoffMillis = retryBackoffMillis;
+    for (int attempt = 1; ; attempt++) {
+      try {
+        preload(networkId);
+        return;
+      } catch (RuntimeException e) {
+        if (attempt >= maxAttempts) {
+          throw e;
+        }
+        log.warn("Failed preloading network '{}' on attempt {} of {}, retrying in {}ms",
+          networkId, attempt, maxAttempts, backoffMillis, e);
+      }
+      try {
+        Thread.sleep(backoffMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted preloading network '" + networkId + "'", e);
+      }
+      backoffMillis *= 2;
+    }
+  }
+
+  private void preload(String networkId) {
+    var timer = Stopwatch.createStarted();
+    var dataShape = runner.load(networkId);
+    log.info("Loaded network '{}' in {}", networkId, timer);
+
+    var random = new Random(networkId.hashCode());
+    for (int batchSize : batchSizes) {
+      var input = new InputBuffer(dataShape, batchSize);
+      var values = input.getValues();
+      for (int i = 0; i < values.length; i++) {
+        values[i] = random.nextFloat();
+      }
+      for (int pass = 0; pass < warmupPasses; pass++) {
+        runner.runClassificationBatch(networkId, input);
+      }
+    }
+    log.info("Loaded and warmed network '{}' in {}", networkId, timer);
+  }
+}
@@ -0,0 +1,90 @@
+package dev.jamesleach.neural.net;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Bounded pool of {@link ComputationGraph} copies.
+ * A {@link ComputationGraph} holds per-forward-pass state so each replica is used by one thread at a time.
+ * Replicas are cloned from the original lazily, up to the maximum, as concurrent demand requires.
+ */
+@Slf4j
+class NetworkReplicaPool {
+  private final ComputationGraph prototype;
+  private final int maxReplicas;
+  private final BlockingQueue<ComputationGraph> idle = new LinkedBlockingQueue<>();
+  private final AtomicInteger replicaCount = new AtomicInteger(1);
+
+  NetworkReplicaPool(ComputationGraph prototype, int maxReplicas) {
+    if (maxReplicas < 1) {
+      throw new IllegalArgumentException("Must allow at least one replica but got " + maxReplicas);
+    }
+    this.prototype = prototype;
+    this.maxReplicas = maxReplicas;
+    idle.add(prototype);
+  }
+
+
+  /**
+   * Check out a replica, apply the function to it and return it to the pool.
+   * Blocks if all replicas are in use and no more may be created.
+   */
+  <T> T withReplica(Function<ComputationGraph, T> function) {
+    var replica = checkout();
+    try {
+      return function.apply(replica);
+    } finally {
+      idle.add(replica);
+    }
+  }
+
+
+  /**
+   * @return the number of replicas created so far, including the original.
+   */
+  int getReplicaCount() {
+    return replicaCount.get();
+  }
+
+
+  /**
+   * Release the native memory of every replica.
+   * Only call once all replicas are back in the pool and the pool will not be used again.
+   */
+  void close() {
+    ComputationGraph replica;
+    while ((replica = idle.poll()) != null) {
+      replica.close();
+    }
+  }
+
+
+  private ComputationGraph checkout() {
+    var replica = idle.poll();
+    if (replica != null) {
+      return replica;
+    }
+    if (replicaCount.getAndUpdate(c -> c < maxReplicas ? c + 1 : c) < maxReplicas) {
+      log.debug("Creating network replica {} of {}", replicaCount.get(), maxReplicas);
+      try {
+        // Inference does not modify parameters so the original can be copied while in use
+        return prototype.clone();
+      } catch (RuntimeException | Error e) {
+        // Free the slot so a later request can try again
+        replicaCount.decrementAndGet();
+        throw e;
+      }
+    }
+    try {
+      return idle.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted waiting for a network replica", e);
+    }
+  }
+}
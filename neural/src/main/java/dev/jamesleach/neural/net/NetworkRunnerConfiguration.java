@@ -0,0 +1,48 @@
+package dev.jamesleach.neural.net;
+
+import org.nd4j.linalg.api.buffer.DataType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Build a {@link NetworkRunnerSpecification} from properties.
+ */
+@Configuration
+class NetworkRunnerConfiguration {
+
+  /**
+   * @param replicasPerNetwork     replicas per cached network, one per core if not positive
+   * @param refreshIntervalSeconds seconds between checks for new network versions, zero to never check
+   * @param maxCacheMb             memory budget for cached networks, the default if not positive
+   * @param inferenceDataType      data type to convert networks to, such as FLOAT or HALF, blank to keep the saved type
+   * @param quantizeInt8           round dense layer weights to int8 precision
+   * @param denseEngineEnabled     run simple dense networks in plain Java rather than DL4J
+   * @param workspacesEnabled      reuse workspace memory for DL4J inference
+   */
+  @Bean
+  NetworkRunnerSpecification networkRunnerSpecification(
+    @Value("${network-runner.replicas-per-network:0}") int replicasPerNetwork,
+    @Value("${network-runner.refresh-interval-seconds:60}") long refreshIntervalSeconds,
+    @Value("${network-runner.max-cache-mb:0}") long maxCacheMb,
+    @Value("${network-runner.inference-data-type:}") String inferenceDataType,
+    @Value("${network-runner.quantize-int8:false}") boolean quantizeInt8,
+    @Value("${network-runner.dense-engine-enabled:true}") boolean denseEngineEnabled,
+    @Value("${network-runner.workspaces-enabled:true}") boolean workspacesEnabled) {
+    var builder = NetworkRunnerSpecification.builder()
+      .refreshInterval(Duration.ofSeconds(refreshIntervalSeconds))
+      .inferenceDataType(inferenceDataType.isBlank() ? null : DataType.valueOf(inferenceDataType.trim()))
+      .quantizeInt8(quantizeInt8)
+      .denseEngineEnabled(denseEngineEnabled)
+      .workspacesEnabled(workspacesEnabled);
+    if (replicasPerNetwork > 0) {
+      builder.replicasPerNetwork(replicasPerNetwork);
+    }
+    if (maxCacheMb > 0) {
+      builder.maxCacheBytes(maxCacheMb * 1024 * 1024);
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,59 @@
+package dev.jamesleach.neural.net;
+
+import lombok.Builder;
+import lombok.Data;
+import org.nd4j.linalg.api.buffer.DataType;
+
+import java.time.Duration;
+
+/**
+ * Configuration for {@link SavedNetworkRunner}
+ */
+@Data
+@Builder
+public class NetworkRunnerSpecification {
+  /**
+   * Maximum number of {@link org.deeplearning4j.nn.graph.ComputationGraph} copies per cached network.
+   * Each concurrent request needs its own copy so this bounds inference parallelism per network.
+   */
+  @Builder.Default
+  private final int replicasPerNetwork = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * How long a cached network is used before checking for a new version in the background.
+   * Zero to never check.
+   */
+  @Builder.Default
+  private final Duration refreshInterval = Duration.ofMinutes(1);
+
+  /**
+   * Memory budget for cached networks.
+   * Each network is estimated as its parameters and single row inference activations times the replicas created
+   * so far, re-weighed as more are created, or as its weights alone on {@link DenseInferenceEngine}.
+   * Replicas are created on demand so a network is charged for one until concurrent requests need more.
+   */
+  @Builder.Default
+  private final long maxCacheBytes = 1024L * 1024 * 1024;
+
+  /**
+   * Data type networks are converted to after loading, such as FLOAT or HALF, or null to keep the saved type.
+   */
+  private final DataType inferenceDataType;
+
+  /**
+   * Round dense layer weights to int8 precision after loading.
+   */
+  private final boolean quantizeInt8;
+
+  /**
+   * Run networks that are a simple chain of dense layers on {@link DenseInferenceEngine} rather than DL4J.
+   */
+  @Builder.Default
+  private final boolean denseEngineEnabled = true;
+
+  /**
+   * Run DL4J inference in reused workspaces rather than allocating native memory for every forward pass.
+   */
+  @Builder.Default
+  private final boolean workspacesEnabled = true;
+}
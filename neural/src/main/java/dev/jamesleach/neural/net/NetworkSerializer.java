@@ -6,11 +6,7 @@ import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.util.ModelSerializer;
 import org.springframework.stereotype.Component;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
-import java.util.Base64;
 
 /**
  * Serialize and Deserialize {@link ComputationGraph}s
@@ -18,25 +14,29 @@ import java.util.Base64;
 @Component
 @Slf4j
 public class NetworkSerializer {
-  private static final Charset CHARSET = StandardCharsets.UTF_8;
 
   /**
-   * ComputationGraph -> Base64 String
+   * ComputationGraph -> model bytes
    */
   @SneakyThrows
-  public String serialize(ComputationGraph graph) {
+  public NetworkBinary serialize(ComputationGraph graph) {
     var bos = new ByteArrayOutputStream();
     ModelSerializer.writeModel(graph, bos, true);
-    return new String(Base64.getEncoder().encode(bos.toByteArray()), CHARSET);
+    return NetworkBinary.ofBytes(bos.toByteArray());
   }
 
   /**
-   * Base64 String -> ComputationGraph
+   * Model bytes -> ComputationGraph
+   * A binary held in a local file is read in place rather than copied to a temporary file first.
    */
   @SneakyThrows
-  public ComputationGraph deserialize(String base64) {
-    byte[] bytes = Base64.getDecoder().decode(base64.getBytes(StandardCharsets.UTF_8));
-    var bis = new ByteArrayInputStream(bytes);
-    return ModelSerializer.restoreComputationGraph(bis);
+  public ComputationGraph deserialize(NetworkBinary binary) {
+    var file = binary.file();
+    if (file.isPresent()) {
+      return ModelSerializer.restoreComputationGraph(file.get().toFile());
+    }
+    try (var in = binary.openStream()) {
+      return ModelSerializer.restoreComputationGraph(in);
+    }
   }
 }
@@ -0,0 +1,114 @@
+package dev.jamesleach.neural.net;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.jamesleach.neural.data.DataShape;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Stored forms of a {@link SerializedNetwork}.
+ * <p>
+ * Version 2 is a small JSON {@link Header} stored next to the raw model bytes,
+ * so loading never has to hold the model as text.
+ * Version 1 is a single JSON {@link LegacyNetwork} document with the model as Base64, still readable.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class NetworkStorageFormat {
+  public static final int LEGACY_VERSION = 1;
+  public static final int VERSION = 2;
+
+
+  public static Header header(@NonNull SerializedNetwork network) {
+    return new Header(VERSION, network.getId(), network.getDataShape());
+  }
+
+
+  /**
+   * The network described by a header with its model bytes.
+   */
+  public static SerializedNetwork fromHeader(@NonNull Header header, @NonNull NetworkBinary binary) {
+    if (header.getVersion() != VERSION) {
+      throw new IllegalStateException("Network '" + header.getId() + "' has unsupported version " + header.getVersion());
+    }
+    return new SerializedNetwork(header.getId(), header.getDataShape(), binary);
+  }
+
+
+  public static SerializedNetwork fromLegacy(@NonNull LegacyNetwork legacy) {
+    return new SerializedNetwork(legacy.getId(), legacy.getDataShape(), NetworkBinary.ofBase64(legacy.getNetworkBinaryBase64()));
+  }
+
+
+  /**
+   * Stream a {@link LegacyNetwork} document, decoding the model straight into a temporary file
+   * rather than holding the Base64 text in memory. The file is deleted when the binary is released.
+   */
+  public static SerializedNetwork readLegacy(@NonNull ObjectMapper objectMapper, @NonNull InputStream in,
+                                             @NonNull Path binaryFile) throws IOException {
+    String id = null;
+    DataShape dataShape = null;
+    boolean hasBinary = false;
+    try (var parser = objectMapper.getFactory().createParser(in)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Expected a JSON object");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        var field = parser.getCurrentName();
+        parser.nextToken();
+        switch (field) {
+          case "id":
+            id = parser.getValueAsString();
+            break;
+          case "dataShape":
+            dataShape = objectMapper.readValue(parser, DataShape.class);
+            break;
+          case "networkBinaryBase64":
+            try (var out = Files.newOutputStream(binaryFile)) {
+              parser.readBinaryValue(out);
+            }
+            hasBinary = true;
+            break;
+          default:
+            parser.skipChildren();
+        }
+      }
+    }
+    if (id == null || dataShape == null || !hasBinary) {
+      throw new IOException("Incomplete legacy network document");
+    }
+    return new SerializedNetwork(id, dataShape, NetworkBinary.ofTemporaryFile(binaryFile));
+  }
+
+
+  /**
+   * Version 2 JSON header.
+   */
+  @Data
+  @RequiredArgsConstructor(onConstructor = @__(@JsonCreator))
+  public static class Header {
+    private final int version;
+    private final String id;
+    private final DataShape dataShape;
+  }
+
+
+  /**
+   * Version 1 JSON document.
+   */
+  @Data
+  @RequiredArgsConstructor(onConstructor = @__(@JsonCreator))
+  public static class LegacyNetwork {
+    private final String id;
+    private final DataShape dataShape;
+    private final String networkBinaryBase64;
+  }
+}
@@ -0,0 +1,11 @@
+package dev.jamesleach.neural.net;
+
+import org.deeplearning4j.earlystopping.trainer.IEarlyStoppingTrainer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+
+/**
+ * Early stopping trainer built by {@link NetworkTrainerBuilder}.
+ */
+public interface NetworkTrainer extends IEarlyStoppingTrainer<ComputationGraph> {
+  NetworkTrainerSpecification getSpecification();
+}
@@ -1,44 +1,78 @@
 package dev.jamesleach.neural.net;
 
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.datasets.iterator.AsyncDataSetIterator;
 import org.deeplearning4j.earlystopping.EarlyStoppingConfiguration;
+import org.deeplearning4j.earlystopping.EarlyStoppingResult;
+import org.deeplearning4j.earlystopping.listener.EarlyStoppingListener;
 import org.deeplearning4j.earlystopping.saver.InMemoryModelSaver;
 import org.deeplearning4j.earlystopping.scorecalc.DataSetLossCalculator;
 import org.deeplearning4j.earlystopping.scorecalc.ScoreCalculator;
+import org.deeplearning4j.earlystopping.termination.MaxEpochsTerminationCondition;
 import org.deeplearning4j.earlystopping.termination.MaxTimeIterationTerminationCondition;
 import org.deeplearning4j.earlystopping.trainer.EarlyStoppingGraphTrainer;
 import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.parallelism.EarlyStoppingParallelTrainer;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 /**
- * Build an {@link EarlyStoppingGraphTrainer} to train a {@link ComputationGraph}
+ * Build an {@link EarlyStoppingGraphTrainer}, or an {@link EarlyStoppingParallelTrainer} when there is more than one
+ * worker, to train a {@link ComputationGraph}.
+ * Training and evaluation batches are prefetched on a background thread while the network trains.
+ * Training throughput in samples per second is logged every epoch.
+ * New best models are saved on a background thread, skipping any superseded before their turn.
  */
 @Service
 @Slf4j
 public class NetworkTrainerBuilder {
+  private static final ExecutorService SAVE_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+    .setNameFormat("best-model-saver-%d")
+    .setDaemon(true)
+    .build());
+
   /**
-   * @param spec the configuration to use to build an {@link EarlyStoppingGraphTrainer}
-   * @return an {@link EarlyStoppingGraphTrainer} to train a network
+   * @param spec the configuration to use to build a trainer
+   * @return a trainer for a network
    */
-  public MetaEquipEarlyStoppingGraphTrainer trainer(NetworkTrainerSpecification spec) {
+  public NetworkTrainer trainer(NetworkTrainerSpecification spec) {
     // Validate
     if (spec.getCompNetworkConfiguration() == null && spec.getInitialModel() == null) {
       throw new IllegalArgumentException("Must specify one of 'compNetworkConfiguration' or 'initialModel'");
     }
+    if (spec.getWorkers() < 1) {
+      throw new IllegalArgumentException("Must have at least one worker but got " + spec.getWorkers());
+    }
+    if (spec.getPrefetchBatches() < 0) {
+      throw new IllegalArgumentException("Cannot prefetch " + spec.getPrefetchBatches() + " batches");
+    }
+    var prefetching = new ArrayList<AsyncDataSetIterator>();
 
     // Trainer parts
-    var saver = spec.getBestModelSaver() == null
-      ? new InMemoryModelSaver<ComputationGraph>()
+    var delegatingSaver = spec.getBestModelSaver() == null
+      ? null
       : new DelegatingModelSaver(spec.getBestModelSaver());
+    var saver = delegatingSaver == null ? new InMemoryModelSaver<ComputationGraph>() : delegatingSaver;
 
     var scoreCalculator = spec.getEvaluationData() == null
       ? new CurrentScore<>(true)
-      : new DataSetLossCalculator(spec.getEvaluationData(), true);
+      : new DataSetLossCalculator(prefetch(spec.getEvaluationData(), spec, prefetching), true);
 
     // Network parts
     var net = spec.getInitialModel() == null
@@ -49,16 +83,44 @@ public class NetworkTrainerBuilder {
     log.info("Network has {} parameters", net.numParams());
     log.info(net.summary());
 
-    return new MetaEquipEarlyStoppingGraphTrainer(
-      new EarlyStoppingConfiguration.Builder<ComputationGraph>()
-        .iterationTerminationConditions(
-          new MaxTimeIterationTerminationCondition(spec.getMaxTime(), spec.getMaxTimeUnit()))
-        .scoreCalculator(scoreCalculator)
-        .evaluateEveryNEpochs(1)
-        .modelSaver(saver)
-        .build(),
-      net,
-      spec);
+    var esConfig = new EarlyStoppingConfiguration.Builder<ComputationGraph>()
+      .iterationTerminationConditions(
+        new MaxTimeIterationTerminationCondition(spec.getMaxTime(), spec.getMaxTimeUnit()))
+      .scoreCalculator(scoreCalculator)
+      .evaluateEveryNEpochs(1)
+      .modelSaver(saver);
+    if (spec.getMaxEpochs() != null) {
+      esConfig.epochTerminationConditions(new MaxEpochsTerminationCondition(spec.getMaxEpochs()));
+    }
+
+    var trainingData = new SampleCountingIterator(spec.getTrainingData());
+    NetworkTrainer trainer;
+    if (spec.getWorkers() == 1) {
+      trainer = new MetaEquipEarlyStoppingGraphTrainer(esConfig.build(), net,
+        prefetch(trainingData, spec, prefetching), spec);
+    } else {
+      // ParallelWrapper prefetches for its workers itself
+      log.info("Training on {} workers averaging every {} batches", spec.getWorkers(), spec.getAveragingFrequency());
+      trainer = new MetaEquipEarlyStoppingParallelTrainer(esConfig.build(), net, trainingData,
+        spec.getPrefetchBatches() * spec.getWorkers(), spec);
+    }
+    trainer.setListener(new TrainingListener(trainingData, spec.getWorkers(), prefetching, delegatingSaver));
+    return trainer;
+  }
+
+  /**
+   * Read batches ahead on a background thread, if enabled and the iterator allows it.
+   * Iterators that prefetch themselves say they do not support async.
+   */
+  private DataSetIterator prefetch(DataSetIterator iterator,
+                                   NetworkTrainerSpecification spec,
+                                   List<AsyncDataSetIterator> prefetching) {
+    if (spec.getPrefetchBatches() == 0 || !iterator.asyncSupported()) {
+      return iterator;
+    }
+    var async = new AsyncDataSetIterator(iterator, spec.getPrefetchBatches(), spec.isPrefetchWorkspace());
+    prefetching.add(async);
+    return async;
   }
 
   /**
@@ -80,14 +142,107 @@ public class NetworkTrainerBuilder {
   }
 
 
+  /**
+   * Pass best models to a saver on {@link #SAVE_EXECUTOR} so training does not wait on storage.
+   * The training thread only takes the in memory copy, and a model replaced by a better one before its save
+   * starts is never saved.
+   */
   @RequiredArgsConstructor
   private static class DelegatingModelSaver extends InMemoryModelSaver<ComputationGraph> {
     private final Consumer<ComputationGraph> delegateBestModelSaver;
+    private final AtomicReference<ComputationGraph> pending = new AtomicReference<>();
+    private volatile Future<?> lastSave = CompletableFuture.completedFuture(null);
+    private volatile RuntimeException lastFailure;
 
     @Override
     public void saveBestModel(ComputationGraph net, double score) throws IOException {
+      // Copies the network, the copy is not trained further
       super.saveBestModel(net, score);
-      delegateBestModelSaver.accept(net);
+      if (pending.getAndSet(getBestModel()) == null) {
+        lastSave = SAVE_EXECUTOR.submit(this::savePending);
+      }
+    }
+
+    /**
+     * Wait for the latest best model to be saved.
+     *
+     * @throws IllegalStateException if it could not be saved
+     */
+    void flush() {
+      try {
+        lastSave.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted waiting for the best model to be saved", e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Error saving best model", e.getCause());
+      }
+      if (lastFailure != null) {
+        throw new IllegalStateException("Error saving best model", lastFailure);
+      }
+    }
+
+    private void savePending() {
+      var model = pending.getAndSet(null);
+      var timer = Stopwatch.createStarted();
+      try {
+        delegateBestModelSaver.accept(model);
+        lastFailure = null;
+        log.info("Saved best model in {}", timer);
+      } catch (RuntimeException e) {
+        // Keep training, a later best model may still save
+        log.error("Error saving best model", e);
+        lastFailure = e;
+      }
+    }
+  }
+
+
+  /**
+   * Log samples per second for each epoch and overall.
+   * Once training completes stop prefetching and wait for the best model to be saved.
+   */
+  @RequiredArgsConstructor
+  private static class TrainingListener implements EarlyStoppingListener<ComputationGraph> {
+    private final SampleCountingIterator trainingData;
+    private final int workers;
+    private final List<AsyncDataSetIterator> prefetching;
+    private final DelegatingModelSaver bestModelSaver;
+    private Stopwatch timer;
+    private Stopwatch epochTimer;
+    private long epochStartSamples;
+
+    @Override
+    public void onStart(EarlyStoppingConfiguration<ComputationGraph> esConfig, ComputationGraph net) {
+      timer = Stopwatch.createStarted();
+      epochTimer = Stopwatch.createStarted();
+      epochStartSamples = trainingData.getSamples();
+    }
+
+    @Override
+    public void onEpoch(int epochNum, double score, EarlyStoppingConfiguration<ComputationGraph> esConfig,
+                        ComputationGraph net) {
+      long samples = trainingData.getSamples() - epochStartSamples;
+      log.info("Epoch {} score {}: {} samples/s on {} workers",
+        epochNum, score, samplesPerSecond(samples, epochTimer), workers);
+      epochTimer.reset().start();
+      epochStartSamples = trainingData.getSamples();
+    }
+
+    @Override
+    public void onCompletion(EarlyStoppingResult<ComputationGraph> result) {
+      log.info("Trained {} epochs on {} workers, {} samples/s overall", result.getTotalEpochs(), workers,
+        samplesPerSecond(trainingData.getSamples(), timer));
+      // Training can stop mid-epoch with a prefetch thread waiting on a full queue
+      prefetching.forEach(AsyncDataSetIterator::shutdown);
+      if (bestModelSaver != null) {
+        bestModelSaver.flush();
+      }
+    }
+
+    private long samplesPerSecond(long samples, Stopwatch timer) {
+      long micros = Math.max(1, timer.elapsed(TimeUnit.MICROSECONDS));
+      return samples * 1_000_000 / micros;
     }
   }
 }
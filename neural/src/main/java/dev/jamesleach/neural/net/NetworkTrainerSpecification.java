@@ -26,4 +26,29 @@ public class NetworkTrainerSpecification {
   private final DataSetIterator trainingData;
   private final DataSetIterator evaluationData;
   private final Consumer<ComputationGraph> bestModelSaver;
+  /**
+   * Stop after this many epochs as well as after the max time, null for no limit.
+   */
+  private final Integer maxEpochs;
+  /**
+   * Model replicas trained in parallel on different batches, one to train on the calling thread only.
+   */
+  @Builder.Default
+  private final int workers = 1;
+  /**
+   * Batches each parallel worker trains on between averaging parameters with the others.
+   */
+  @Builder.Default
+  private final int averagingFrequency = 5;
+  /**
+   * Batches prepared ahead on a background thread while the network trains, 0 to read batches on the training thread.
+   * With parallel workers this is per worker.
+   */
+  @Builder.Default
+  private final int prefetchBatches = 2;
+  /**
+   * Prefetch batches into a workspace on the training device rather than allocating every batch.
+   * Each batch is only valid until the next is read.
+   */
+  private final boolean prefetchWorkspace;
 }
\ No newline at end of file
@@ -0,0 +1,100 @@
+package dev.jamesleach.neural.net;
+
+import lombok.RequiredArgsConstructor;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Count the examples handed out by another iterator, across epochs.
+ * Batches read ahead by a prefetching consumer are counted when read.
+ */
+@RequiredArgsConstructor
+class SampleCountingIterator implements DataSetIterator {
+  private final DataSetIterator delegate;
+  private final AtomicLong samples = new AtomicLong();
+
+  long getSamples() {
+    return samples.get();
+  }
+
+
+  @Override
+  public DataSet next(int num) {
+    return count(delegate.next(num));
+  }
+
+
+  @Override
+  public DataSet next() {
+    return count(delegate.next());
+  }
+
+
+  @Override
+  public boolean hasNext() {
+    return delegate.hasNext();
+  }
+
+
+  @Override
+  public int inputColumns() {
+    return delegate.inputColumns();
+  }
+
+
+  @Override
+  public int totalOutcomes() {
+    return delegate.totalOutcomes();
+  }
+
+
+  @Override
+  public boolean resetSupported() {
+    return delegate.resetSupported();
+  }
+
+
+  @Override
+  public boolean asyncSupported() {
+    return delegate.asyncSupported();
+  }
+
+
+  @Override
+  public void reset() {
+    delegate.reset();
+  }
+
+
+  @Override
+  public int batch() {
+    return delegate.batch();
+  }
+
+
+  @Override
+  public void setPreProcessor(DataSetPreProcessor preProcessor) {
+    delegate.setPreProcessor(preProcessor);
+  }
+
+
+  @Override
+  public DataSetPreProcessor getPreProcessor() {
+    return delegate.getPreProcessor();
+  }
+
+
+  @Override
+  public List<String> getLabels() {
+    return delegate.getLabels();
+  }
+
+  private DataSet count(DataSet dataSet) {
+    samples.addAndGet(dataSet.numExamples());
+    return dataSet;
+  }
+}
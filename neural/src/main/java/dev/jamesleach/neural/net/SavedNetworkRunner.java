@@ -1,56 +1,384 @@
 package dev.jamesleach.neural.net;
 
+import com.google.common.base.Stopwatch;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import dev.jamesleach.neural.data.ClassificationOutput;
 import dev.jamesleach.neural.data.DataPoint;
+import dev.jamesleach.neural.data.DataShape;
+import dev.jamesleach.neural.data.InputBuffer;
 import dev.jamesleach.neural.data.NeuralDataUtils;
-import lombok.Data;
-import lombok.RequiredArgsConstructor;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
 /**
- * Run a single data point through a saved network.
- * Hard-cache the network based on ID.
+ * Run data points through a saved network.
+ * Cache the network based on ID, evicting the least recently used once over a budget of estimated memory.
+ * Networks that are a simple chain of dense layers run on {@link DenseInferenceEngine}, others on DL4J where
+ * each cached network holds a pool of replicas so concurrent requests do not share a graph.
+ * <p>
+ * Cached networks are refreshed in the background once older than the refresh interval and
+ * the loader reports a new version. Requests keep using the network they started with,
+ * and a replaced network's graphs are closed once its last request finishes.
  */
+@Slf4j
 @Component
-@RequiredArgsConstructor
-public class SavedNetworkRunner {
-  private static final long MAX_CACHED_NETWORKS = 100;
+public class SavedNetworkRunner implements AutoCloseable {
+  private static final long BYTES_PER_WEIGHT = 1024;
+  private static final Executor REFRESH_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+    .setNameFormat("network-refresh-%d")
+    .setDaemon(true)
+    .build());
+
   private final NetworkLoader loader;
   private final NetworkSerializer serializer;
+  private final NetworkRunnerSpecification specification;
+  private final LoadingCache<String, UnpackedNetwork> networkCache;
+  private final AtomicLong cachedBytes = new AtomicLong();
+
+
+  @Autowired
+  public SavedNetworkRunner(NetworkLoader loader, NetworkSerializer serializer, NetworkRunnerSpecification specification) {
+    this.loader = loader;
+    this.serializer = serializer;
+    this.specification = specification;
+
+    // A single segment so the whole budget is shared by all entries
+    var builder = CacheBuilder.newBuilder()
+      .concurrencyLevel(1)
+      .maximumWeight(Math.max(1, specification.getMaxCacheBytes() / BYTES_PER_WEIGHT))
+      .weigher(this::weigh)
+      .recordStats()
+      .removalListener(this::onRemoval);
+    if (!specification.getRefreshInterval().isZero()) {
+      builder.refreshAfterWrite(specification.getRefreshInterval());
+    }
+    this.networkCache = builder.build(CacheLoader.asyncReloading(new NetworkCacheLoader(), REFRESH_EXECUTOR));
+  }
+
+
+  /**
+   * Runner with the default {@link NetworkRunnerSpecification}.
+   */
+  public SavedNetworkRunner(NetworkLoader loader, NetworkSerializer serializer) {
+    this(loader, serializer, NetworkRunnerSpecification.builder().build());
+  }
+
+
+  /**
+   * Load and cache a network, if it is not already.
+   *
+   * @return the input shape of the network
+   */
+  public DataShape load(String networkId) {
+    return networkCache.getUnchecked(networkId).getSerializedNetwork().getDataShape();
+  }
+
+
+  /**
+   * Hit, miss and load statistics of the network cache.
+   */
+  public NetworkCacheStats getCacheStats() {
+    return NetworkCacheStats.from(networkCache.stats(), networkCache.size(), cachedBytes.get());
+  }
+
 
-  private final LoadingCache<String, UnpackedNetwork> networkCache = CacheBuilder.newBuilder()
-    .maximumSize(MAX_CACHED_NETWORKS)
-    .build(CacheLoader.from(this::loadNetwork));
+  /**
+   * Drop every cached network, closing each once its last request finishes.
+   */
+  @Override
+  public void close() {
+    networkCache.invalidateAll();
+  }
 
 
   /**
    * Run a single data point through a saved network.
    */
   public ClassificationOutput runClassification(String networkId, DataPoint dataPoint) {
-    var network = networkCache.getUnchecked(networkId);
-    var input = NeuralDataUtils.toSingleInputArray(dataPoint);
-    var output = network.getNetwork().output(input)[0].toDoubleVector(); // Only one output supported
-    int predictedIndex = NeuralDataUtils.highestProbabilityLabelIndex(output);
+    var input = InputBuffer.forCurrentThread(dataPoint.getDataShape());
+    input.putRow(0, dataPoint);
+    return runClassification(networkId, input);
+  }
+
+
+  /**
+   * Run a single row input buffer through a saved network.
+   */
+  public ClassificationOutput runClassification(String networkId, InputBuffer input) {
+    if (input.getRows() != 1) {
+      throw new IllegalArgumentException("Expected a single row but got " + input.getRows());
+    }
+    return runClassificationBatch(networkId, input).get(0);
+  }
+
+
+  /**
+   * Run several data points through a saved network in a single forward pass.
+   * Outputs are in the same order as the data points.
+   */
+  public List<ClassificationOutput> runClassificationBatch(String networkId, List<? extends DataPoint> dataPoints) {
+    if (dataPoints.isEmpty()) {
+      return List.of();
+    }
+    var input = new InputBuffer(dataPoints.get(0).getDataShape(), dataPoints.size());
+    for (int i = 0; i < dataPoints.size(); i++) {
+      if (!input.getDataShape().hasSameInputShape(dataPoints.get(i).getDataShape())) {
+        throw new IllegalArgumentException("Data point " + i + " has shape " + dataPoints.get(i).getDataShape()
+          + " but data point 0 has shape " + input.getDataShape());
+      }
+      input.putRow(i, dataPoints.get(i));
+    }
+    return runClassificationBatch(networkId, input);
+  }
+
+
+  /**
+   * Run every row of an input buffer through a saved network in a single forward pass.
+   * Outputs are in the same order as the rows.
+   */
+  public List<ClassificationOutput> runClassificationBatch(String networkId, InputBuffer input) {
+    var network = acquire(networkId);
+    double[][] output;
+    try {
+      validateInputShape(network, input);
+      output = network.getEngine().output(input);
+      reweighIfGrown(networkId, network);
+    } finally {
+      network.release();
+    }
+    return Arrays.stream(output)
+      .map(this::toClassificationOutput)
+      .collect(Collectors.toList());
+  }
+
+  private void validateInputShape(UnpackedNetwork network, InputBuffer input) {
+    var expected = network.getSerializedNetwork().getDataShape();
+    if (!expected.hasSameInputShape(input.getDataShape())) {
+      throw new IllegalArgumentException("Input has shape " + input.getDataShape() + " but network '"
+        + network.getSerializedNetwork().getId() + "' expects " + expected);
+    }
+  }
+
+  private ClassificationOutput toClassificationOutput(double[] labelProbabilities) {
+    int predictedIndex = NeuralDataUtils.highestProbabilityLabelIndex(labelProbabilities);
     return new ClassificationOutput(
-      output,
+      labelProbabilities,
       predictedIndex
     );
   }
 
+  /**
+   * Charge the cache for replicas created since the network was weighed, by replacing it with a holder
+   * sharing the engine. A network replaced or evicted in the meantime is left alone.
+   */
+  private void reweighIfGrown(String networkId, UnpackedNetwork network) {
+    if (network.getEngine().getEstimatedBytes() == network.getChargedBytes()) {
+      return;
+    }
+    network.share().ifPresent(shared -> {
+      cachedBytes.addAndGet(shared.getChargedBytes());
+      if (!networkCache.asMap().replace(networkId, network, shared)) {
+        cachedBytes.addAndGet(-shared.getChargedBytes());
+        shared.release();
+      }
+    });
+  }
+
+  /**
+   * The cached network, held until released.
+   * Retried if the network is replaced and closed between the lookup and acquiring it.
+   */
+  private UnpackedNetwork acquire(String networkId) {
+    while (true) {
+      var network = networkCache.getUnchecked(networkId);
+      if (network.acquire()) {
+        return network;
+      }
+    }
+  }
+
+  /**
+   * Drop the cache's hold on a replaced or evicted network.
+   * A refresh that found no new version replaces the network with a holder sharing its engine,
+   * so releasing the old holder never closes the engine.
+   */
+  private void onRemoval(RemovalNotification<String, UnpackedNetwork> notification) {
+    var network = notification.getValue();
+    if (network == null) {
+      return;
+    }
+    cachedBytes.addAndGet(-network.getChargedBytes());
+    if (notification.wasEvicted()) {
+      log.warn("Evicted network '{}' of ~{} bytes ({}), {} bytes still cached", notification.getKey(),
+        network.getChargedBytes(), notification.getCause(), cachedBytes.get());
+    } else if (notification.getCause() != RemovalCause.REPLACED) {
+      log.info("Network '{}' {}", notification.getKey(), notification.getCause());
+    }
+    network.release();
+  }
+
+  /**
+   * Weight in KiB, an entry over the whole budget is kept on its own rather than evicted straight away.
+   */
+  private int weigh(String networkId, UnpackedNetwork network) {
+    long weight = network.getChargedBytes() / BYTES_PER_WEIGHT;
+    long maxWeight = Math.max(1, specification.getMaxCacheBytes() / BYTES_PER_WEIGHT);
+    if (weight > maxWeight) {
+      log.warn("Network '{}' of ~{} bytes is over the cache budget of {} bytes",
+        networkId, network.getChargedBytes(), specification.getMaxCacheBytes());
+      weight = maxWeight;
+    }
+    return (int) Math.min(Integer.MAX_VALUE, weight);
+  }
+
   private UnpackedNetwork loadNetwork(String id) {
+    var timer = Stopwatch.createStarted();
+    var version = loader.version(id).orElse(null);
     var serializedNetwork = loader.load(id)
       .orElseThrow(() -> new IllegalStateException("No network found for id '" + id + "'"));
-    var graph = serializer.deserialize(serializedNetwork.getNetworkBinaryBase64());
-    return new UnpackedNetwork(serializedNetwork, graph);
+    ComputationGraph graph;
+    try {
+      graph = NetworkPrecision.apply(serializer.deserialize(serializedNetwork.getNetworkBinary()), specification);
+    } finally {
+      serializedNetwork.getNetworkBinary().release();
+    }
+    var network = new UnpackedNetwork(serializedNetwork, version, engine(graph, serializedNetwork.getDataShape()));
+    cachedBytes.addAndGet(network.getChargedBytes());
+    log.info("Loaded network '{}' version {} of ~{} bytes into {} in {}",
+      id, version, network.getChargedBytes(), network.getEngine().getClass().getSimpleName(), timer);
+    return network;
   }
 
-  @Data
+  /**
+   * The plain Java engine if enabled and the graph is supported, in which case the graph is closed,
+   * otherwise DL4J.
+   */
+  private InferenceEngine engine(ComputationGraph graph, DataShape dataShape) {
+    if (specification.isDenseEngineEnabled() && isFloatOrUnchanged(specification.getInferenceDataType())) {
+      var dense = DenseInferenceEngine.from(graph);
+      if (dense.isPresent()) {
+        graph.close();
+        return dense.get();
+      }
+    }
+    return new GraphInferenceEngine(graph, dataShape, specification.getReplicasPerNetwork(),
+      specification.isWorkspacesEnabled());
+  }
+
+  /**
+   * The plain Java engine works in float so is not used for other requested data types.
+   */
+  private boolean isFloatOrUnchanged(DataType dataType) {
+    return dataType == null || dataType == DataType.FLOAT;
+  }
+
+
+  private class NetworkCacheLoader extends CacheLoader<String, UnpackedNetwork> {
+    @Override
+    public UnpackedNetwork load(String id) {
+      return loadNetwork(id);
+    }
+
+    /**
+     * Only load again if the version has changed, otherwise keep the current engine.
+     */
+    @Override
+    public ListenableFuture<UnpackedNetwork> reload(String id, UnpackedNetwork current) {
+      var version = loader.version(id);
+      if (version.isEmpty() || version.get().equals(current.getVersion())) {
+        var shared = current.share();
+        if (shared.isPresent()) {
+          cachedBytes.addAndGet(shared.get().getChargedBytes());
+          return Futures.immediateFuture(shared.get());
+        }
+        // Closed since the refresh started
+        return Futures.immediateFuture(loadNetwork(id));
+      }
+      log.info("Network '{}' changed from version {} to {}", id, current.getVersion(), version.get());
+      return Futures.immediateFuture(loadNetwork(id));
+    }
+  }
+
+
+  /**
+   * A deserialized network, counting the requests using it.
+   * The cache holds one reference per holder, the graphs are closed when the count reaches zero.
+   * Each holder keeps the estimated bytes it was weighed at, as the engine's estimate can grow.
+   */
+  @Getter
   private static class UnpackedNetwork {
     private final SerializedNetwork serializedNetwork;
-    private final ComputationGraph network;
+    private final String version;
+    private final InferenceEngine engine;
+    private final long chargedBytes;
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger references;
+
+    UnpackedNetwork(SerializedNetwork serializedNetwork, String version, InferenceEngine engine) {
+      this(serializedNetwork, version, engine, new AtomicInteger(1));
+    }
+
+    private UnpackedNetwork(SerializedNetwork serializedNetwork, String version, InferenceEngine engine,
+                            AtomicInteger references) {
+      this.serializedNetwork = serializedNetwork;
+      this.version = version;
+      this.engine = engine;
+      this.chargedBytes = engine.getEstimatedBytes();
+      this.references = references;
+    }
+
+    /**
+     * A new holder sharing the engine and reference count, itself holding a reference.
+     *
+     * @return empty if the network has already been closed
+     */
+    Optional<UnpackedNetwork> share() {
+      if (!acquire()) {
+        return Optional.empty();
+      }
+      return Optional.of(new UnpackedNetwork(serializedNetwork, version, engine, references));
+    }
+
+    /**
+     * @return false if the network has already been closed
+     */
+    boolean acquire() {
+      int count;
+      do {
+        count = references.get();
+        if (count == 0) {
+          return false;
+        }
+      } while (!references.compareAndSet(count, count + 1));
+      return true;
+    }
+
+    void release() {
+      if (references.decrementAndGet() == 0) {
+        log.info("Closing network '{}' version {}", serializedNetwork.getId(), version);
+        engine.close();
+      }
+    }
   }
 }
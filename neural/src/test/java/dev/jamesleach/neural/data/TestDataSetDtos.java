@@ -4,6 +4,9 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Random;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.hasSize;
@@ -118,4 +121,41 @@ class TestDataSetDtos {
   void testCannotCreateEmptyDataSet() {
     assertThrows(IllegalStateException.class, () -> new LabeledDataSet(ImmutableList.of()));
   }
-}
\ No newline at end of file
+
+
+  @Test
+  void testLargeDataSetRowsInOrder() {
+    var random = new Random(1);
+    var points = new ArrayList<LabeledDataPoint>();
+    for (int i = 0; i < 200; i++) {
+      var data = new double[3][4][2];
+      for (double[][] rows : data) {
+        for (double[] row : rows) {
+          row[0] = random.nextDouble();
+          row[1] = random.nextDouble();
+        }
+      }
+      points.add(new LabeledDataPoint(data, NeuralDataUtils.toLabelProbabilityArray(i % 5, 5)));
+    }
+
+    var dataSet = new LabeledDataSet(points).getDataSet();
+
+    assertArrayEquals(new long[]{200, 2, 3, 4}, dataSet.getFeatures().shape());
+    for (int i = 0; i < points.size(); i++) {
+      var point = points.get(i);
+      assertEquals(NeuralDataUtils.inInputArrayRow(point.getDataShape(), point::getInputData3d),
+        dataSet.getFeatures().slice(i));
+      assertEquals(i % 5, NeuralDataUtils.highestProbabilityLabelIndex(dataSet.getLabels().getRow(i).toDoubleVector()));
+    }
+  }
+
+
+  @Test
+  void testCannotMixShapes() {
+    var point = new LabeledDataPoint(new double[2][3][1], new double[]{0, 1});
+    var otherShape = new LabeledDataPoint(new double[3][2][1], new double[]{0, 1});
+    var exception = assertThrows(IllegalArgumentException.class,
+      () -> new LabeledDataSet(ImmutableList.of(point, otherShape)));
+    assertTrue(exception.getMessage().startsWith("Data point 1 has shape"));
+  }
+}
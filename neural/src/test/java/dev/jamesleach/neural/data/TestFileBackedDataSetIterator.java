@@ -0,0 +1,86 @@
+package dev.jamesleach.neural.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestFileBackedDataSetIterator {
+  private static final DataShape SHAPE = new DataShape(3, 2, 2, 1, 1);
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void testBatchesInOrder() throws Exception {
+    var file = writeBatches(5);
+    try (var iterator = new FileBackedDataSetIterator(file, 2, false, 1)) {
+      assertEquals(SHAPE, iterator.getDataShape());
+      assertEquals(2, iterator.inputColumns());
+      assertEquals(2, iterator.totalOutcomes());
+      assertEquals(List.of(0f, 1f, 2f, 3f, 4f), firstValues(iterator));
+
+      // Another epoch after a reset, including one part way through
+      iterator.reset();
+      iterator.next();
+      iterator.reset();
+      assertEquals(List.of(0f, 1f, 2f, 3f, 4f), firstValues(iterator));
+    }
+  }
+
+
+  @Test
+  void testShuffledEachEpoch() throws Exception {
+    var file = writeBatches(20);
+    try (var iterator = new FileBackedDataSetIterator(file, 3, true, 1)) {
+      var first = firstValues(iterator);
+      iterator.reset();
+      var second = firstValues(iterator);
+
+      assertNotEquals(first, second);
+      assertEquals(20, first.size());
+      assertEquals(190, first.stream().mapToDouble(Float::doubleValue).sum());
+      assertEquals(190, second.stream().mapToDouble(Float::doubleValue).sum());
+    }
+  }
+
+
+  @Test
+  void testPreProcessorApplied() throws Exception {
+    try (var iterator = new FileBackedDataSetIterator(writeBatches(2), 1, false, 1)) {
+      iterator.setPreProcessor(d -> d.getFeatures().addi(100));
+      assertEquals(100, iterator.next().getFeatures().getFloat(0));
+      assertEquals(101, iterator.next().getFeatures().getFloat(0));
+      assertFalse(iterator.hasNext());
+    }
+  }
+
+
+  /**
+   * Every value of batch b is b, with one row of 2 values per batch.
+   */
+  private Path writeBatches(int batches) throws Exception {
+    var dataSets = new ArrayList<LabeledDataSet>();
+    for (int b = 0; b < batches; b++) {
+      dataSets.add(new LabeledDataSet(SHAPE,
+        Nd4j.create(new float[]{b, b}, new long[]{1, 1, 1, 2}, 'c'),
+        Nd4j.create(new float[]{1, 0}, new long[]{1, 2}, 'c')));
+    }
+    var file = tempDir.resolve("data.batches");
+    LabeledDataSetFile.write(file, "stamp", new LabeledDataSetCollection(dataSets));
+    return file;
+  }
+
+  private List<Float> firstValues(FileBackedDataSetIterator iterator) {
+    var values = new ArrayList<Float>();
+    while (iterator.hasNext()) {
+      values.add(iterator.next().getFeatures().getFloat(0));
+    }
+    return values;
+  }
+}
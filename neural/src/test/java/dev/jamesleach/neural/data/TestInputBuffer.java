@@ -0,0 +1,70 @@
+package dev.jamesleach.neural.data;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestInputBuffer {
+  private static final double[][][] DATA = {
+    {{1, 2}, {3, 4}, {5, 6}},
+    {{7, 8}, {9, 10}, {11, 12}}
+  };
+  private static final LabeledDataPoint POINT = new LabeledDataPoint(DATA, new double[]{0, 1});
+
+  @Test
+  void testLayoutMatchesInputArrayRow() {
+    var buffer = new InputBuffer(POINT.getDataShape(), 2);
+    buffer.putRow(1, POINT);
+
+    var expectedRow = NeuralDataUtils.inInputArrayRow(POINT.getDataShape(), POINT::getInputData3d);
+    var array = buffer.toINDArray();
+    assertArrayEquals(new long[]{2, 2, 2, 3}, array.shape());
+    assertEquals(0, array.slice(0).sumNumber().doubleValue());
+    assertEquals(expectedRow, array.slice(1));
+
+    // Single value puts land in the same place as a row copy
+    var single = new InputBuffer(POINT.getDataShape(), 1);
+    for (int h = 0; h < 2; h++) {
+      for (int l = 0; l < 3; l++) {
+        for (int d = 0; d < 2; d++) {
+          single.put(0, h, l, d, (float) DATA[h][l][d]);
+        }
+      }
+    }
+    var copied = new InputBuffer(POINT.getDataShape(), 1);
+    copied.putRow(0, POINT);
+    assertArrayEquals(copied.getValues(), single.getValues());
+  }
+
+
+  @Test
+  void testBufferAndArrayReused() {
+    var buffer = InputBuffer.forCurrentThread(POINT.getDataShape());
+    assertSame(buffer, InputBuffer.forCurrentThread(POINT.getDataShape()));
+    assertEquals(1, buffer.getRows());
+
+    buffer.putRow(0, POINT);
+    var array = buffer.toINDArray();
+    assertEquals(78, array.sumNumber().doubleValue(), 1e-6);
+
+    buffer.put(0, 0, 0, 0, 100);
+    assertSame(array, buffer.toINDArray());
+    assertEquals(177, array.sumNumber().doubleValue(), 1e-6);
+  }
+
+
+  @Test
+  void testCopyRowBetweenBuffers() {
+    var source = new InputBuffer(POINT.getDataShape(), 1);
+    source.putRow(0, POINT);
+    var target = new InputBuffer(POINT.getDataShape(), 3);
+    target.putRow(2, source);
+
+    assertEquals(0, target.getValues()[0]);
+    assertEquals(1, target.getValues()[24]);
+    assertEquals(12, target.getValues()[35]);
+
+    var otherShape = new InputBuffer(new DataShape(3, 2, 2, 2, 2), 1);
+    assertThrows(IllegalArgumentException.class, () -> target.putRow(0, otherShape));
+  }
+}
@@ -0,0 +1,69 @@
+package dev.jamesleach.neural.data;
+
+import dev.jamesleach.neural.net.ExampleNetworks;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static dev.jamesleach.neural.net.ExampleNetworks.SMALL_SHAPE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestLabeledDataSetFile {
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void testWriteAndRead() throws Exception {
+    var file = tempDir.resolve("data.batches");
+    var data = new LabeledDataSetCollection(dataSet(3), dataSet(2));
+    LabeledDataSetFile.write(file, "stamp", data);
+
+    var read = LabeledDataSetFile.read(file, "stamp").orElseThrow();
+    assertEquals(SMALL_SHAPE, read.getDataShape());
+    assertEquals(2, read.getDataSets().size());
+    for (int i = 0; i < 2; i++) {
+      assertEquals(data.getDataSets().get(i).getDataSet().getFeatures(), read.getDataSets().get(i).getDataSet().getFeatures());
+      assertEquals(data.getDataSets().get(i).getDataSet().getLabels(), read.getDataSets().get(i).getDataSet().getLabels());
+    }
+  }
+
+
+  @Test
+  void testStaleOrUnreadableIgnored() throws Exception {
+    var file = tempDir.resolve("data.batches");
+    assertTrue(LabeledDataSetFile.read(file, "stamp").isEmpty());
+
+    LabeledDataSetFile.write(file, "stamp", new LabeledDataSetCollection(dataSet(3)));
+    assertTrue(LabeledDataSetFile.read(file, "other-stamp").isEmpty());
+
+    // Truncated
+    var bytes = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(bytes, bytes.length - 4));
+    assertTrue(LabeledDataSetFile.read(file, "stamp").isEmpty());
+
+    Files.writeString(file, "not a data set file");
+    assertTrue(LabeledDataSetFile.read(file, "stamp").isEmpty());
+  }
+
+
+  private LabeledDataSet dataSet(int rows) {
+    var random = new Random(rows);
+    var points = new ArrayList<LabeledDataPoint>();
+    for (int i = 0; i < rows; i++) {
+      var point = ExampleNetworks.randomPoint(SMALL_SHAPE, random);
+      var input = new double[SMALL_SHAPE.getHeight()][SMALL_SHAPE.getLength()][SMALL_SHAPE.getDepth()];
+      for (int h = 0; h < SMALL_SHAPE.getHeight(); h++) {
+        for (int l = 0; l < SMALL_SHAPE.getLength(); l++) {
+          input[h][l][0] = point.getInputData3d(h, l, 0);
+        }
+      }
+      points.add(new LabeledDataPoint(input, NeuralDataUtils.toLabelProbabilityArray(i % 4, SMALL_SHAPE.getNumLabels())));
+    }
+    return new LabeledDataSet(points);
+  }
+}
@@ -0,0 +1,107 @@
+package dev.jamesleach.neural.net;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import dev.jamesleach.neural.data.ClassificationOutput;
+import dev.jamesleach.neural.data.UnlabeledDataPoint;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static dev.jamesleach.neural.net.ExampleNetworks.SMALL_SHAPE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Slf4j
+class TestBatchingNetworkRunner {
+  private static final String NET_ID = "net-id";
+  private static final int NUM_THREADS = 16;
+  private static final int NUM_POINTS = 400;
+
+  private final NetworkLoader networkLoader = mock(NetworkLoader.class);
+  // DL4J rather than the dense engine, so batches run concurrently through graph replicas and workspaces
+  private final SavedNetworkRunner savedNetworkRunner = new SavedNetworkRunner(networkLoader, new NetworkSerializer(),
+    NetworkRunnerSpecification.builder().denseEngineEnabled(false).build());
+  private final BatchingNetworkRunner batchingRunner = new BatchingNetworkRunner(savedNetworkRunner, true, 8, 5000);
+  private final BatchingNetworkRunner unbatchedRunner = new BatchingNetworkRunner(savedNetworkRunner, false, 8, 5000);
+  private final ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+    batchingRunner.destroy();
+  }
+
+
+  @Test
+  void testBatchedOutputsMatchUnbatched() throws Exception {
+    when(networkLoader.load(NET_ID)).thenReturn(Optional.of(
+      ExampleNetworks.serializedFeedForward(NET_ID, SMALL_SHAPE, 10)));
+
+    var random = new Random(1);
+    var points = IntStream.range(0, NUM_POINTS)
+      .mapToObj(i -> ExampleNetworks.randomPoint(SMALL_SHAPE, random))
+      .collect(Collectors.toList());
+
+    // Warm the cache so the timings below exclude loading
+    savedNetworkRunner.runClassification(NET_ID, points.get(0));
+
+    var expected = runConcurrently(unbatchedRunner, points, "per-request");
+    var actual = runConcurrently(batchingRunner, points, "batched");
+
+    for (int i = 0; i < NUM_POINTS; i++) {
+      assertEquals(expected.get(i).getLabelIndex(), actual.get(i).getLabelIndex());
+      assertArrayEquals(expected.get(i).getLabelProbabilities(), actual.get(i).getLabelProbabilities(), 1e-5);
+    }
+  }
+
+
+  @Test
+  void testNoNetworkFound() {
+    when(networkLoader.load(NET_ID)).thenReturn(Optional.empty());
+    var exception = assertThrows(UncheckedExecutionException.class, () ->
+      batchingRunner.runClassification(NET_ID, ExampleNetworks.randomPoint(SMALL_SHAPE, new Random(1))));
+
+    assertEquals("No network found for id 'net-id'", exception.getCause().getMessage());
+  }
+
+
+  @Test
+  void testRejectedOnceDestroyed() {
+    when(networkLoader.load(NET_ID)).thenReturn(Optional.of(
+      ExampleNetworks.serializedFeedForward(NET_ID, SMALL_SHAPE, 10)));
+    var point = ExampleNetworks.randomPoint(SMALL_SHAPE, new Random(1));
+    batchingRunner.runClassification(NET_ID, point);
+
+    batchingRunner.destroy();
+
+    var exception = assertThrows(IllegalStateException.class, () -> batchingRunner.runClassification(NET_ID, point));
+    assertEquals("Batching has stopped", exception.getMessage());
+  }
+
+
+  private List<ClassificationOutput> runConcurrently(BatchingNetworkRunner runner,
+                                                     List<UnlabeledDataPoint> points,
+                                                     String description) throws Exception {
+    var timer = Stopwatch.createStarted();
+    var futures = new ArrayList<Future<ClassificationOutput>>();
+    for (var point : points) {
+      futures.add(executor.submit(() -> runner.runClassification(NET_ID, point)));
+    }
+    var outputs = new ArrayList<ClassificationOutput>();
+    for (var future : futures) {
+      outputs.add(future.get(30, TimeUnit.SECONDS));
+    }
+    log.info("{} classifications {} on {} threads took {}", points.size(), description, NUM_THREADS, timer);
+    return outputs;
+  }
+}
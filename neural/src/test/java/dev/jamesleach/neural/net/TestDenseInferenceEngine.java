@@ -0,0 +1,77 @@
+package dev.jamesleach.neural.net;
+
+import dev.jamesleach.neural.data.InputBuffer;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.junit.jupiter.api.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.Random;
+
+import static dev.jamesleach.neural.net.ExampleNetworks.SMALL_SHAPE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestDenseInferenceEngine {
+
+  @Test
+  void testMatchesGraph() {
+    var graph = ExampleNetworks.feedForward(SMALL_SHAPE, 20);
+    var engine = DenseInferenceEngine.from(graph).orElseThrow();
+    var random = new Random(1);
+    var input = new InputBuffer(SMALL_SHAPE, 5);
+    for (int i = 0; i < input.getRows(); i++) {
+      input.putRow(i, ExampleNetworks.randomPoint(SMALL_SHAPE, random));
+    }
+    // Zero inputs are skipped
+    input.put(0, 0, 0, 0, 0);
+
+    var expected = graph.output(input.toINDArray())[0].toDoubleMatrix();
+    var actual = engine.output(input);
+
+    assertEquals(expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++) {
+      assertArrayEquals(expected[i], actual[i], 1e-5);
+    }
+    assertEquals(Float.BYTES * graph.numParams(), engine.getEstimatedBytes());
+  }
+
+
+  @Test
+  void testOtherActivations() {
+    var graph = chain(Activation.TANH, Activation.SIGMOID);
+    var engine = DenseInferenceEngine.from(graph).orElseThrow();
+    var input = new InputBuffer(SMALL_SHAPE, 1);
+    input.putRow(0, ExampleNetworks.randomPoint(SMALL_SHAPE, new Random(1)));
+
+    assertArrayEquals(graph.output(input.toINDArray())[0].toDoubleMatrix()[0], engine.output(input)[0], 1e-5);
+  }
+
+
+  @Test
+  void testUnsupportedActivation() {
+    assertTrue(DenseInferenceEngine.from(chain(Activation.LEAKYRELU, Activation.SOFTMAX)).isEmpty());
+  }
+
+
+  private ComputationGraph chain(Activation hidden, Activation output) {
+    var graph = new ComputationGraph(new NeuralNetConfiguration.Builder()
+      .seed(1234)
+      .graphBuilder()
+      .addInputs("input")
+      .setInputTypes(InputType.convolutional(SMALL_SHAPE.getHeight(), SMALL_SHAPE.getLength(), SMALL_SHAPE.getDepth()))
+      .addLayer("hidden", new DenseLayer.Builder().activation(hidden).weightInit(WeightInit.XAVIER).nOut(8).build(),
+        "input")
+      .addLayer("output", new OutputLayer.Builder(LossFunctions.LossFunction.MSE)
+          .activation(output).weightInit(WeightInit.XAVIER).nOut(SMALL_SHAPE.getNumLabels()).build(),
+        "hidden")
+      .setOutputs("output")
+      .build());
+    graph.init();
+    return graph;
+  }
+}
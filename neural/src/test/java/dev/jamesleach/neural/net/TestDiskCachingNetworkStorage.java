@@ -0,0 +1,206 @@
+package dev.jamesleach.neural.net;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static dev.jamesleach.neural.net.ExampleNetworks.SMALL_SHAPE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestDiskCachingNetworkStorage {
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final VersionedLoader remote = new VersionedLoader();
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void testServedFromDiskUntilVersionChanges() {
+    remote.put(ExampleNetworks.serializedFeedForward("a", SMALL_SHAPE, 10), "v1");
+    var storage = new DiskCachingNetworkStorage(remote, remote, objectMapper, dir, Long.MAX_VALUE);
+
+    var first = storage.load("a").orElseThrow();
+    assertEquals(1, remote.loads.get());
+    assertTrue(first.getNetworkBinary().file().orElseThrow().startsWith(dir));
+
+    var second = storage.load("a").orElseThrow();
+    assertEquals(1, remote.loads.get());
+    assertEquals(first.getNetworkBinary().file(), second.getNetworkBinary().file());
+    assertEquals(SMALL_SHAPE, second.getDataShape());
+    assertNotNull(new NetworkSerializer().deserialize(second.getNetworkBinary()));
+
+    // New version is downloaded again
+    remote.put(ExampleNetworks.serializedFeedForward("a", SMALL_SHAPE, 12), "v2");
+    var third = storage.load("a").orElseThrow();
+    assertEquals(2, remote.loads.get());
+    assertNotEquals(first.getNetworkBinary().file(), third.getNetworkBinary().file());
+
+    // A new instance, as after a restart, reads the existing entries
+    var restarted = new DiskCachingNetworkStorage(remote, remote, objectMapper, dir, Long.MAX_VALUE);
+    restarted.load("a").orElseThrow();
+    assertEquals(2, remote.loads.get());
+
+    assertTrue(storage.load("missing").isEmpty());
+  }
+
+
+  @Test
+  void testLeastRecentlyUsedEvicted() throws Exception {
+    remote.put(ExampleNetworks.serializedFeedForward("a", SMALL_SHAPE, 10), "v1");
+    remote.put(ExampleNetworks.serializedFeedForward("b", SMALL_SHAPE, 10), "v1");
+    remote.put(ExampleNetworks.serializedFeedForward("c", SMALL_SHAPE, 10), "v1");
+    var probe = new DiskCachingNetworkStorage(remote, remote, objectMapper, dir.resolve("probe"), Long.MAX_VALUE);
+    long entrySize = Files.size(probe.load("a").orElseThrow().getNetworkBinary().file().orElseThrow());
+    remote.loads.set(0);
+
+    // Room for two entries
+    var storage = new DiskCachingNetworkStorage(remote, remote, objectMapper, dir.resolve("lru"), entrySize * 2);
+    loadAndRelease(storage, "a");
+    loadAndRelease(storage, "b");
+    loadAndRelease(storage, "a");
+    loadAndRelease(storage, "c"); // Evicts b
+    assertEquals(3, remote.loads.get());
+
+    loadAndRelease(storage, "a");
+    loadAndRelease(storage, "c");
+    assertEquals(3, remote.loads.get());
+    loadAndRelease(storage, "b");
+    assertEquals(4, remote.loads.get());
+  }
+
+
+  @Test
+  void testUnreleasedEntryNotEvicted() throws Exception {
+    remote.put(ExampleNetworks.serializedFeedForward("a", SMALL_SHAPE, 10), "v1");
+    remote.put(ExampleNetworks.serializedFeedForward("b", SMALL_SHAPE, 10), "v1");
+    // Room for one entry
+    var storage = new DiskCachingNetworkStorage(remote, remote, objectMapper, dir, 1);
+
+    var a = storage.load("a").orElseThrow();
+    var b = storage.load("b").orElseThrow();
+    assertNotNull(new NetworkSerializer().deserialize(a.getNetworkBinary()));
+    assertNotNull(new NetworkSerializer().deserialize(b.getNetworkBinary()));
+
+    // Evicted once released
+    a.getNetworkBinary().release();
+    assertFalse(Files.exists(a.getNetworkBinary().file().orElseThrow()));
+    assertTrue(Files.exists(b.getNetworkBinary().file().orElseThrow()));
+  }
+
+
+  @Test
+  void testLatestEntryServedWithoutVersion() throws Exception {
+    remote.put(ExampleNetworks.serializedFeedForward("a", SMALL_SHAPE, 10), "v1");
+    var storage = new DiskCachingNetworkStorage(remote, remote, objectMapper, dir, Long.MAX_VALUE);
+    loadAndRelease(storage, "a");
+    remote.put(ExampleNetworks.serializedFeedForward("a", SMALL_SHAPE, 12), "v2");
+    var latest = storage.load("a").orElseThrow();
+    latest.getNetworkBinary().release();
+
+    // e.g. the remote cannot be reached
+    remote.versions.remove("a");
+    var served = storage.load("a").orElseThrow();
+    assertEquals(2, remote.loads.get());
+    assertEquals(latest.getNetworkBinary().file(), served.getNetworkBinary().file());
+    served.getNetworkBinary().release();
+
+    // A deleted entry is loaded from the delegate again
+    Files.delete(served.getNetworkBinary().file().orElseThrow());
+    remote.versions.put("a", "v2");
+    assertNotNull(new NetworkSerializer().deserialize(storage.load("a").orElseThrow().getNetworkBinary()));
+    assertEquals(3, remote.loads.get());
+  }
+
+
+  @Test
+  void testNotCachedWithoutVersion() {
+    remote.put(ExampleNetworks.serializedFeedForward("a", SMALL_SHAPE, 10), null);
+    var storage = new DiskCachingNetworkStorage(remote, remote, objectMapper, dir, Long.MAX_VALUE);
+    storage.load("a");
+    storage.load("a");
+    assertEquals(2, remote.loads.get());
+  }
+
+
+  @Test
+  void testDownloadReleasedOnceCached() throws Exception {
+    var download = Files.createDirectories(dir.resolve("downloads")).resolve("a.bin");
+    try (var in = ExampleNetworks.serializedFeedForward("a", SMALL_SHAPE, 10).getNetworkBinary().openStream()) {
+      Files.copy(in, download);
+    }
+    remote.put(new SerializedNetwork("a", SMALL_SHAPE, NetworkBinary.ofTemporaryFile(download)), "v1");
+    var storage = new DiskCachingNetworkStorage(remote, remote, objectMapper, dir.resolve("cache"), Long.MAX_VALUE);
+
+    var cached = storage.load("a").orElseThrow();
+
+    assertFalse(Files.exists(download));
+    assertNotNull(new NetworkSerializer().deserialize(cached.getNetworkBinary()));
+  }
+
+
+  @Test
+  void testNotCachedIfChangedWhileLoading() {
+    var storage = new DiskCachingNetworkStorage(new NetworkLoader() {
+      private int versions;
+
+      @Override
+      public Optional<SerializedNetwork> load(String id) {
+        remote.loads.incrementAndGet();
+        return Optional.of(ExampleNetworks.serializedFeedForward(id, SMALL_SHAPE, 10));
+      }
+
+      @Override
+      public Optional<String> version(String id) {
+        // Published again between every version check
+        return Optional.of("v" + versions++);
+      }
+    }, remote, objectMapper, dir, Long.MAX_VALUE);
+
+    var loaded = storage.load("a").orElseThrow();
+
+    assertFalse(loaded.getNetworkBinary().file().isPresent());
+    assertEquals(1, remote.loads.get());
+  }
+
+
+  private void loadAndRelease(DiskCachingNetworkStorage storage, String id) {
+    storage.load(id).orElseThrow().getNetworkBinary().release();
+  }
+
+  /**
+   * In memory stand in for remote storage.
+   */
+  private static class VersionedLoader implements NetworkLoader, NetworkSaver {
+    private final Map<String, SerializedNetwork> networks = new HashMap<>();
+    private final Map<String, String> versions = new HashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    void put(SerializedNetwork network, String version) {
+      networks.put(network.getId(), network);
+      versions.put(network.getId(), version);
+    }
+
+    @Override
+    public Optional<SerializedNetwork> load(String id) {
+      loads.incrementAndGet();
+      return Optional.ofNullable(networks.get(id));
+    }
+
+    @Override
+    public Optional<String> version(String id) {
+      return Optional.ofNullable(versions.get(id));
+    }
+
+    @Override
+    public void save(SerializedNetwork network) {
+      put(network, String.valueOf(System.nanoTime()));
+    }
+  }
+}
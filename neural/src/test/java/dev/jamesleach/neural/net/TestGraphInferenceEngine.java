@@ -0,0 +1,47 @@
+package dev.jamesleach.neural.net;
+
+import dev.jamesleach.neural.data.InputBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static dev.jamesleach.neural.net.ExampleNetworks.SMALL_SHAPE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestGraphInferenceEngine {
+
+  @Test
+  void testWorkspacesSameOutput() {
+    var withWorkspaces = new GraphInferenceEngine(ExampleNetworks.feedForward(SMALL_SHAPE, 10), SMALL_SHAPE, 1, true);
+    var without = new GraphInferenceEngine(ExampleNetworks.feedForward(SMALL_SHAPE, 10), SMALL_SHAPE, 1, false);
+    var random = new Random(1);
+
+    // Batches of different sizes through the same reused workspace
+    for (int rows : new int[]{1, 8, 3, 8, 1}) {
+      var input = new InputBuffer(SMALL_SHAPE, rows);
+      for (int i = 0; i < rows; i++) {
+        input.putRow(i, ExampleNetworks.randomPoint(SMALL_SHAPE, random));
+      }
+      var expected = without.output(input);
+      var actual = withWorkspaces.output(input);
+      assertEquals(rows, actual.length);
+      for (int i = 0; i < rows; i++) {
+        assertArrayEquals(expected[i], actual[i]);
+      }
+    }
+    withWorkspaces.close();
+    without.close();
+  }
+
+
+  @Test
+  void testOnlyCreatedReplicasEstimated() {
+    var single = new GraphInferenceEngine(ExampleNetworks.feedForward(SMALL_SHAPE, 10), SMALL_SHAPE, 1, true);
+    var pooled = new GraphInferenceEngine(ExampleNetworks.feedForward(SMALL_SHAPE, 10), SMALL_SHAPE, 8, true);
+
+    assertTrue(single.getEstimatedBytes() > 0);
+    assertEquals(single.getEstimatedBytes(), pooled.getEstimatedBytes());
+    single.close();
+    pooled.close();
+  }
+}
@@ -0,0 +1,159 @@
+package dev.jamesleach.neural.net;
+
+import dev.jamesleach.neural.data.LabeledDataPoint;
+import dev.jamesleach.neural.data.LabeledDataSet;
+import dev.jamesleach.neural.data.LabeledDataSetCollection;
+import dev.jamesleach.neural.data.NeuralDataUtils;
+import org.deeplearning4j.nn.api.OptimizationAlgorithm;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.dropout.GaussianDropout;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static dev.jamesleach.neural.net.ExampleNetworks.SMALL_SHAPE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TestHyperparameterSearch {
+  private static final NetworkConfigurationBuilder NETWORK = (c, shape) -> new NeuralNetConfiguration.Builder()
+    .seed(c.getSeed())
+    .optimizationAlgo(OptimizationAlgorithm.STOCHASTIC_GRADIENT_DESCENT)
+    .updater(new Adam(c.getLearningRate()))
+    .graphBuilder()
+    .addInputs("input")
+    .setInputTypes(InputType.convolutional(shape.getHeight(), shape.getLength(), shape.getDepth()))
+    .addLayer("hidden",
+      new DenseLayer.Builder()
+        .activation(Activation.RELU)
+        .weightInit(WeightInit.XAVIER)
+        .dropOut(new GaussianDropout(c.getDropout()))
+        .nOut(8 * c.getSizeMultiplier())
+        .build(),
+      "input")
+    .addLayer("output",
+      new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT)
+        .activation(Activation.SOFTMAX)
+        .weightInit(WeightInit.XAVIER)
+        .nOut(shape.getNumLabels())
+        .build(),
+      "hidden")
+    .setOutputs("output")
+    .build();
+
+  private final NetworkSaver saver = mock(NetworkSaver.class);
+  private final NetworkSerializer serializer = new NetworkSerializer();
+  private final HyperparameterSearch search = new HyperparameterSearch(new NetworkTrainerBuilder(), serializer, saver);
+
+  @Test
+  void gridTriesEveryCombinationAndSavesBest() {
+    var trials = search.searchAndSave("id", spec(HyperparameterSearchSpecification.Strategy.GRID)
+      .learningRates(List.of(0.001, 0.01))
+      .dropouts(List.of(0.0, 0.1))
+      .sizeMultipliers(List.of(1, 2))
+      .build());
+
+    assertEquals(8, trials.size());
+    assertEquals(8, trials.stream().map(HyperparameterTrial::getHyperparameters).distinct().count());
+    for (int i = 1; i < trials.size(); i++) {
+      assertTrue(trials.get(i - 1).getAccuracy() >= trials.get(i).getAccuracy());
+      assertEquals(2, trials.get(i).getEpochs());
+    }
+    assertEquals(9, HyperparameterSearch.table(trials).lines().count());
+
+    var saved = ArgumentCaptor.forClass(SerializedNetwork.class);
+    verify(saver).save(saved.capture());
+    assertEquals("id", saved.getValue().getId());
+    assertEquals(SMALL_SHAPE, saved.getValue().getDataShape());
+    assertEquals(trials.get(0).getModel().params(),
+      serializer.deserialize(saved.getValue().getNetworkBinary()).params());
+  }
+
+
+  @Test
+  void randomSamplesWithinRange() {
+    var trials = search.search(spec(HyperparameterSearchSpecification.Strategy.RANDOM)
+      .randomTrials(5)
+      .learningRates(List.of(0.001, 0.01))
+      .dropouts(List.of(0.0, 0.1))
+      .build());
+
+    assertEquals(5, trials.size());
+    for (var trial : trials) {
+      var hyperparameters = trial.getHyperparameters();
+      assertTrue(hyperparameters.getLearningRate() >= 0.001 && hyperparameters.getLearningRate() <= 0.01);
+      assertTrue(hyperparameters.getDropout() >= 0 && hyperparameters.getDropout() <= 0.1);
+    }
+  }
+
+
+  @Test
+  void successiveHalvingTrainsSurvivorsLonger() {
+    var trials = search.search(spec(HyperparameterSearchSpecification.Strategy.SUCCESSIVE_HALVING)
+      .randomTrials(4)
+      .trialEpochs(1)
+      .build());
+
+    // Rounds of 4, 2 then 1 candidates training 1, 2 then 4 more epochs
+    assertEquals(4, trials.size());
+    var epochs = trials.stream().mapToInt(HyperparameterTrial::getEpochs).sorted().toArray();
+    assertArrayEquals(new int[]{1, 1, 3, 7}, epochs);
+  }
+
+
+  @Test
+  void nothingSavedOutOfTime() {
+    var spec = spec(HyperparameterSearchSpecification.Strategy.GRID)
+      .timeBudget(Duration.ZERO)
+      .build();
+
+    var exception = assertThrows(IllegalStateException.class, () -> search.searchAndSave("id", spec));
+    assertEquals("No trial finished within PT0S", exception.getMessage());
+    verifyNoInteractions(saver);
+  }
+
+  private HyperparameterSearchSpecification.HyperparameterSearchSpecificationBuilder spec(
+    HyperparameterSearchSpecification.Strategy strategy) {
+    return HyperparameterSearchSpecification.builder()
+      .networkConfigurationBuilder(NETWORK)
+      .trainingData(dataSets(new Random(1)))
+      .evaluationData(dataSets(new Random(2)))
+      .strategy(strategy)
+      .timeBudget(Duration.ofMinutes(2))
+      .concurrentTrials(4)
+      .trialEpochs(2)
+      .sizeMultipliers(List.of(1))
+      .seeds(List.of(1234L));
+  }
+
+  /**
+   * Points whose label is the column with the highest values.
+   */
+  private LabeledDataSetCollection dataSets(Random random) {
+    var dataSets = new ArrayList<LabeledDataSet>();
+    for (int b = 0; b < 4; b++) {
+      var points = new ArrayList<LabeledDataPoint>();
+      for (int i = 0; i < 16; i++) {
+        int label = random.nextInt(SMALL_SHAPE.getNumLabels());
+        var data = ExampleNetworks.randomPoint(SMALL_SHAPE, random).getInputData3d();
+        for (double[][] row : data) {
+          row[label][0] += 1;
+        }
+        points.add(new LabeledDataPoint(data, NeuralDataUtils.toLabelProbabilityArray(label, SMALL_SHAPE.getNumLabels())));
+      }
+      dataSets.add(new LabeledDataSet(points));
+    }
+    return new LabeledDataSetCollection(dataSets);
+  }
+}
@@ -0,0 +1,89 @@
+package dev.jamesleach.neural.net;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.jamesleach.neural.data.NeuralDataUtils;
+import dev.jamesleach.neural.net.NetworkStorageFormat.LegacyNetwork;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.Random;
+
+import static dev.jamesleach.neural.net.ExampleNetworks.SMALL_SHAPE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestLocalFileNetworkSaverLoader {
+  private static final String ID = "test-local-file-network";
+  private static final Path DIR = Paths.get("./saved-networks");
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final NetworkSerializer serializer = new NetworkSerializer();
+  private final LocalFileNetworkSaverLoader saverLoader = new LocalFileNetworkSaverLoader(objectMapper);
+
+  @AfterEach
+  void deleteFiles() throws IOException {
+    for (var name : new String[]{ID + ".net1.json", ID + ".net2.json", ID + ".net2.bin"}) {
+      Files.deleteIfExists(DIR.resolve(name));
+    }
+  }
+
+
+  @Test
+  void testSaveAndLoad() {
+    var graph = ExampleNetworks.feedForward(SMALL_SHAPE, 10);
+    saverLoader.save(new SerializedNetwork(ID, SMALL_SHAPE, serializer.serialize(graph)));
+
+    var loaded = saverLoader.load(ID).orElseThrow();
+    assertEquals(ID, loaded.getId());
+    assertEquals(SMALL_SHAPE, loaded.getDataShape());
+    // The model is read straight from its own file
+    assertEquals(DIR.resolve(ID + ".net2.bin"), loaded.getNetworkBinary().file().orElseThrow());
+    assertSameOutput(graph, serializer.deserialize(loaded.getNetworkBinary()));
+  }
+
+
+  @Test
+  void testLoadLegacy() throws IOException {
+    var graph = ExampleNetworks.feedForward(SMALL_SHAPE, 10);
+    byte[] bytes;
+    try (var in = serializer.serialize(graph).openStream()) {
+      bytes = in.readAllBytes();
+    }
+    Files.createDirectories(DIR);
+    objectMapper.writeValue(DIR.resolve(ID + ".net1.json").toFile(),
+      new LegacyNetwork(ID, SMALL_SHAPE, Base64.getEncoder().encodeToString(bytes)));
+
+    var loaded = saverLoader.load(ID).orElseThrow();
+    assertEquals(SMALL_SHAPE, loaded.getDataShape());
+    // Decoded into a temporary file, not the saved networks directory
+    var decoded = loaded.getNetworkBinary().file().orElseThrow();
+    assertFalse(decoded.startsWith(DIR.toAbsolutePath().normalize()));
+    assertSameOutput(graph, serializer.deserialize(loaded.getNetworkBinary()));
+
+    // Re-saving upgrades to the new format
+    saverLoader.save(loaded);
+    loaded.getNetworkBinary().release();
+    assertFalse(Files.exists(decoded));
+    assertEquals(DIR.resolve(ID + ".net2.bin"), saverLoader.load(ID).orElseThrow().getNetworkBinary().file().orElseThrow());
+    try (var files = Files.list(DIR)) {
+      assertTrue(files.noneMatch(f -> f.getFileName().toString().endsWith(".tmp")));
+    }
+  }
+
+
+  @Test
+  void testMissing() {
+    assertTrue(saverLoader.load(ID).isEmpty());
+  }
+
+
+  private void assertSameOutput(ComputationGraph expected, ComputationGraph actual) {
+    var input = NeuralDataUtils.toSingleInputArray(ExampleNetworks.randomPoint(SMALL_SHAPE, new Random(1)));
+    assertEquals(expected.output(input)[0], actual.output(input)[0]);
+  }
+}
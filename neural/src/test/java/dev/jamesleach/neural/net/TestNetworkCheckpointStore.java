@@ -0,0 +1,148 @@
+package dev.jamesleach.neural.net;
+
+import dev.jamesleach.neural.data.NeuralDataUtils;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static dev.jamesleach.neural.net.ExampleNetworks.SMALL_SHAPE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestNetworkCheckpointStore {
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void everyCheckpointRestored() throws Exception {
+    var store = new NetworkCheckpointStore(tempDir.resolve("net"), true);
+    var graph = ExampleNetworks.feedForward(SMALL_SHAPE, 10);
+    var point = NeuralDataUtils.toSingleInputArray(ExampleNetworks.randomPoint(SMALL_SHAPE, new Random(1)));
+
+    var first = store.save(graph);
+    var firstOutput = graph.outputSingle(point).dup();
+    train(graph);
+    var second = store.save(graph);
+
+    assertEquals(List.of(first, second), store.checkpointIds());
+    assertEquals(second, store.latestCheckpointId().orElseThrow());
+    assertEquals(firstOutput, store.restore(first).outputSingle(point));
+    var restored = store.restore(second);
+    assertEquals(graph.params(), restored.params());
+    assertEquals(graph.getUpdater().getStateViewArray(), restored.getUpdater().getStateViewArray());
+    assertEquals(graph.getConfiguration().getIterationCount(), restored.getConfiguration().getIterationCount());
+    assertEquals(graph.outputSingle(point), restored.outputSingle(point));
+
+    // Configuration once, then a file per checkpoint smaller than the full model
+    var configDir = onlyChild(tempDir.resolve("net"));
+    try (var files = Files.list(configDir)) {
+      assertEquals(3, files.count());
+    }
+    long fullBytes;
+    try (var in = new NetworkSerializer().serialize(graph).openStream()) {
+      fullBytes = in.readAllBytes().length;
+    }
+    assertTrue(Files.size(configDir.resolve(second + ".ckpt.gz")) < fullBytes);
+  }
+
+
+  @Test
+  void updaterStateOptional() throws Exception {
+    var store = new NetworkCheckpointStore(tempDir, false);
+    var graph = ExampleNetworks.feedForward(SMALL_SHAPE, 10);
+    train(graph);
+
+    var restored = store.restore(store.save(graph));
+
+    assertEquals(graph.params(), restored.params());
+    assertNotEquals(graph.getUpdater().getStateViewArray(), restored.getUpdater().getStateViewArray());
+  }
+
+
+  @Test
+  void differentConfigurationsKeptApart() throws Exception {
+    var store = new NetworkCheckpointStore(tempDir, true);
+    var small = ExampleNetworks.feedForward(SMALL_SHAPE, 10);
+    var large = ExampleNetworks.feedForward(SMALL_SHAPE, 20);
+
+    var first = store.save(small);
+    var second = store.save(large);
+    var third = store.save(small);
+
+    assertEquals(List.of(first, second, third), store.checkpointIds());
+    assertEquals(small.params(), store.restore(first).params());
+    assertEquals(large.params(), store.restore(second).params());
+    assertEquals(small.params(), store.restore(third).params());
+    try (var files = Files.list(tempDir)) {
+      assertEquals(2, files.count());
+    }
+  }
+
+
+  @Test
+  void oldestCheckpointsPruned() throws Exception {
+    var store = new NetworkCheckpointStore(tempDir, false, 2);
+    var small = ExampleNetworks.feedForward(SMALL_SHAPE, 10);
+    var large = ExampleNetworks.feedForward(SMALL_SHAPE, 20);
+
+    store.save(small);
+    var second = store.save(large);
+    var third = store.save(large);
+
+    assertEquals(List.of(second, third), store.checkpointIds());
+    assertEquals(large.params(), store.restore(second).params());
+    // The first configuration has no checkpoints left
+    onlyChild(tempDir);
+  }
+
+
+  @Test
+  void otherFilesIgnored() throws Exception {
+    var store = new NetworkCheckpointStore(tempDir, false);
+    var graph = ExampleNetworks.feedForward(SMALL_SHAPE, 10);
+    var first = store.save(graph);
+    var configDir = onlyChild(tempDir);
+    Files.copy(configDir.resolve(first + ".ckpt.gz"), configDir.resolve("best.ckpt.gz"));
+
+    var second = store.save(graph);
+
+    assertEquals(List.of(first, second), store.checkpointIds());
+    assertEquals("000002", second);
+  }
+
+
+  @Test
+  void unknownCheckpointRejected() {
+    var store = new NetworkCheckpointStore(tempDir, true);
+
+    var exception = assertThrows(IllegalArgumentException.class, () -> store.restore("000001"));
+    assertEquals("No checkpoint '000001' in " + tempDir, exception.getMessage());
+  }
+
+  private Path onlyChild(Path dir) throws Exception {
+    try (var files = Files.list(dir)) {
+      var children = files.collect(Collectors.toList());
+      assertEquals(1, children.size());
+      return children.get(0);
+    }
+  }
+
+  private void train(ComputationGraph graph) {
+    var random = new Random(2);
+    var features = Nd4j.rand(8, SMALL_SHAPE.getDepth(), SMALL_SHAPE.getHeight(), SMALL_SHAPE.getLength());
+    var labels = Nd4j.zeros(8, SMALL_SHAPE.getNumLabels());
+    for (int i = 0; i < 8; i++) {
+      labels.putScalar(i, random.nextInt(SMALL_SHAPE.getNumLabels()), 1);
+    }
+    for (int i = 0; i < 5; i++) {
+      graph.fit(new DataSet(features, labels));
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package dev.jamesleach.neural.net;
+
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.junit.jupiter.api.Test;
+import org.nd4j.linalg.indexing.BooleanIndexing;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.indexing.conditions.Conditions;
+
+import static dev.jamesleach.neural.net.ExampleNetworks.SMALL_SHAPE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestNetworkPrecision {
+
+  @Test
+  void testZeroColumnQuantized() {
+    var graph = ExampleNetworks.feedForward(SMALL_SHAPE, 10);
+    var weights = graph.getLayer("hidden").getParam(DefaultParamInitializer.WEIGHT_KEY);
+    weights.get(NDArrayIndex.all(), NDArrayIndex.point(0)).assign(0);
+    var original = weights.dup();
+
+    NetworkPrecision.quantizeDenseWeights(graph);
+
+    assertFalse(BooleanIndexing.or(weights, Conditions.isNan()));
+    assertEquals(0, weights.get(NDArrayIndex.all(), NDArrayIndex.point(0)).amaxNumber().doubleValue());
+    // Within half a step of the largest weight over 127 steps
+    double step = original.amaxNumber().doubleValue() / 127;
+    assertTrue(original.sub(weights).amaxNumber().doubleValue() <= step / 2 + 1e-6);
+  }
+}
@@ -0,0 +1,85 @@
+package dev.jamesleach.neural.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+import static dev.jamesleach.neural.net.ExampleNetworks.SMALL_SHAPE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TestNetworkPreloader {
+  private final NetworkLoader networkLoader = mock(NetworkLoader.class);
+  private final SavedNetworkRunner runner = new SavedNetworkRunner(networkLoader, new NetworkSerializer());
+
+  @Test
+  void testReadyOnceAllLoaded() throws Exception {
+    when(networkLoader.load("a")).thenReturn(Optional.of(ExampleNetworks.serializedFeedForward("a", SMALL_SHAPE, 10)));
+    when(networkLoader.load("b")).thenReturn(Optional.of(ExampleNetworks.serializedFeedForward("b", SMALL_SHAPE, 12)));
+    var preloader = new NetworkPreloader(runner, new String[]{"a", " b", "a", ""}, 3, new int[]{1, 4}, 1, 0);
+    assertFalse(preloader.isReady());
+
+    preloader.preload().get();
+    assertTrue(preloader.isReady());
+    assertSame(preloader.preload(), preloader.preload());
+
+    // Already cached
+    runner.runClassification("a", ExampleNetworks.randomPoint(SMALL_SHAPE, new Random(1)));
+    verify(networkLoader, times(1)).load("a");
+    verify(networkLoader, times(1)).load("b");
+    preloader.destroy();
+  }
+
+
+  @Test
+  void testNotReadyIfLoadFails() {
+    when(networkLoader.load("a")).thenReturn(Optional.empty());
+    var preloader = new NetworkPreloader(runner, new String[]{"a"}, 3, new int[]{1}, 3, 1);
+
+    assertThrows(ExecutionException.class, () -> preloader.preload().get());
+    verify(networkLoader, times(3)).load("a");
+    assertFalse(preloader.isReady());
+    preloader.destroy();
+  }
+
+
+  @Test
+  void testRetriedUntilLoaded() throws Exception {
+    when(networkLoader.load("a"))
+      .thenReturn(Optional.empty())
+      .thenReturn(Optional.of(ExampleNetworks.serializedFeedForward("a", SMALL_SHAPE, 10)));
+    var preloader = new NetworkPreloader(runner, new String[]{"a"}, 3, new int[]{1}, 3, 1);
+
+    preloader.preload().get();
+    assertTrue(preloader.isReady());
+    verify(networkLoader, times(2)).load("a");
+    preloader.destroy();
+  }
+
+
+  @Test
+  void testStartsAgainAfterFailure() throws Exception {
+    when(networkLoader.load("a")).thenReturn(Optional.empty());
+    var preloader = new NetworkPreloader(runner, new String[]{"a"}, 3, new int[]{1}, 1, 0);
+    var failed = preloader.preload();
+    assertThrows(ExecutionException.class, failed::get);
+
+    when(networkLoader.load("a")).thenReturn(Optional.of(ExampleNetworks.serializedFeedForward("a", SMALL_SHAPE, 10)));
+    var again = preloader.preload();
+    assertNotSame(failed, again);
+    again.get();
+    assertTrue(preloader.isReady());
+    preloader.destroy();
+  }
+
+
+  @Test
+  void testReadyWithNothingToLoad() throws Exception {
+    var preloader = new NetworkPreloader(runner, new String[0], 3, new int[]{1}, 1, 0);
+    preloader.preload().get();
+    assertTrue(preloader.isReady());
+    preloader.destroy();
+  }
+}
@@ -0,0 +1,96 @@
+package dev.jamesleach.neural.net;
+
+import dev.jamesleach.neural.data.ClassificationOutput;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static dev.jamesleach.neural.net.ExampleNetworks.SMALL_SHAPE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TestNetworkReplicaPool {
+  private static final String NET_ID = "net-id";
+
+  @Test
+  void testReplicasCreatedOnDemandUpToMaximum() throws Exception {
+    var pool = new NetworkReplicaPool(ExampleNetworks.feedForward(SMALL_SHAPE, 10), 3);
+    assertEquals(1, pool.getReplicaCount());
+
+    // Sequential use re-uses the original
+    pool.withReplica(g -> g);
+    pool.withReplica(g -> g);
+    assertEquals(1, pool.getReplicaCount());
+
+    // Hold replicas three at a time
+    var executor = Executors.newFixedThreadPool(6);
+    var allCheckedOut = new CyclicBarrier(3);
+    var futures = new ArrayList<Future<?>>();
+    try {
+      for (int i = 0; i < 6; i++) {
+        futures.add(executor.submit(() -> pool.withReplica(g -> {
+          await(allCheckedOut);
+          return g;
+        })));
+      }
+      for (var future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(3, pool.getReplicaCount());
+  }
+
+
+  @Test
+  void testConcurrentOutputsMatchSingleThreaded() throws Exception {
+    var networkLoader = mock(NetworkLoader.class);
+    when(networkLoader.load(NET_ID)).thenReturn(Optional.of(
+      ExampleNetworks.serializedFeedForward(NET_ID, SMALL_SHAPE, 50)));
+    // The pool is only used by DL4J, not the dense engine
+    var runner = new SavedNetworkRunner(networkLoader, new NetworkSerializer(),
+      NetworkRunnerSpecification.builder().replicasPerNetwork(4).denseEngineEnabled(false).build());
+
+    var random = new Random(1);
+    var points = IntStream.range(0, 200)
+      .mapToObj(i -> ExampleNetworks.randomPoint(SMALL_SHAPE, random))
+      .collect(Collectors.toList());
+    var expected = points.stream()
+      .map(p -> runner.runClassification(NET_ID, p))
+      .collect(Collectors.toList());
+
+    var executor = Executors.newFixedThreadPool(16);
+    try {
+      var futures = new ArrayList<Future<ClassificationOutput>>();
+      for (int repeat = 0; repeat < 10; repeat++) {
+        for (var point : points) {
+          futures.add(executor.submit(() -> runner.runClassification(NET_ID, point)));
+        }
+      }
+      for (int i = 0; i < futures.size(); i++) {
+        var actual = futures.get(i).get(30, TimeUnit.SECONDS);
+        var single = expected.get(i % points.size());
+        assertEquals(single.getLabelIndex(), actual.getLabelIndex());
+        assertArrayEquals(single.getLabelProbabilities(), actual.getLabelProbabilities(), 1e-6);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+
+  private static void await(CyclicBarrier barrier) {
+    try {
+      barrier.await(30, TimeUnit.SECONDS);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
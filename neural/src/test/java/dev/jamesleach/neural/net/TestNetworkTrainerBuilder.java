@@ -0,0 +1,154 @@
+package dev.jamesleach.neural.net;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import dev.jamesleach.neural.data.LabeledDataPoint;
+import dev.jamesleach.neural.data.LabeledDataSet;
+import dev.jamesleach.neural.data.NeuralDataUtils;
+import org.deeplearning4j.datasets.iterator.impl.ListDataSetIterator;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.junit.jupiter.api.Test;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static dev.jamesleach.neural.net.ExampleNetworks.SMALL_SHAPE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestNetworkTrainerBuilder {
+  private static final int BATCHES = 6;
+  private static final int BATCH_SIZE = 8;
+
+  private final NetworkTrainerBuilder trainerBuilder = new NetworkTrainerBuilder();
+
+  @Test
+  void prefetchedTrainingSeesEveryBatch() {
+    var trainingData = new SampleCountingIterator(new ListDataSetIterator<>(batches(), BATCH_SIZE));
+
+    var result = trainerBuilder.trainer(spec(trainingData)
+      .maxEpochs(2)
+      .prefetchBatches(2)
+      .build())
+      .fit();
+
+    assertEquals(2, result.getTotalEpochs());
+    assertEquals(2L * BATCHES * BATCH_SIZE, trainingData.getSamples());
+  }
+
+
+  @Test
+  void prefetchMatchesSynchronousTraining() {
+    var synchronous = trainerBuilder.trainer(spec(new ListDataSetIterator<>(batches(), BATCH_SIZE))
+      .maxEpochs(1)
+      .prefetchBatches(0)
+      .build())
+      .fit()
+      .getBestModel();
+    var prefetched = trainerBuilder.trainer(spec(new ListDataSetIterator<>(batches(), BATCH_SIZE))
+      .maxEpochs(1)
+      .prefetchBatches(3)
+      .prefetchWorkspace(true)
+      .build())
+      .fit()
+      .getBestModel();
+
+    assertArrayEquals(synchronous.params().toFloatVector(), prefetched.params().toFloatVector(), 1e-6f);
+  }
+
+
+  @Test
+  void bestModelSavedInBackground() {
+    var saved = new CopyOnWriteArrayList<ComputationGraph>();
+    var saveThreads = new CopyOnWriteArrayList<String>();
+    Consumer<ComputationGraph> slowSaver = net -> {
+      saveThreads.add(Thread.currentThread().getName());
+      Uninterruptibles.sleepUninterruptibly(50, TimeUnit.MILLISECONDS);
+      saved.add(net);
+    };
+
+    var best = trainerBuilder.trainer(spec(new ListDataSetIterator<>(batches(), BATCH_SIZE))
+      .maxEpochs(5)
+      .bestModelSaver(slowSaver)
+      .build())
+      .fit()
+      .getBestModel();
+
+    // The final best model is saved by the time training returns
+    assertFalse(saved.isEmpty());
+    assertSame(best, saved.get(saved.size() - 1));
+    assertTrue(saveThreads.stream().allMatch(name -> name.startsWith("best-model-saver")));
+  }
+
+
+  @Test
+  void parallelTrainingSavesAndCountsEveryBatch() {
+    var trainingData = new SampleCountingIterator(new ListDataSetIterator<>(batches(), BATCH_SIZE));
+    var saved = new CopyOnWriteArrayList<ComputationGraph>();
+
+    var result = trainerBuilder.trainer(spec(trainingData)
+      .workers(2)
+      .maxEpochs(2)
+      .bestModelSaver(saved::add)
+      .build())
+      .fit();
+
+    assertEquals(2, result.getTotalEpochs());
+    assertEquals(2L * BATCHES * BATCH_SIZE, trainingData.getSamples());
+    // Flushed when training completed
+    assertFalse(saved.isEmpty());
+    assertSame(result.getBestModel(), saved.get(saved.size() - 1));
+  }
+
+
+  @Test
+  void failedFinalSaveReported() {
+    var trainer = trainerBuilder.trainer(spec(new ListDataSetIterator<>(batches(), BATCH_SIZE))
+      .maxEpochs(1)
+      .bestModelSaver(net -> {
+        throw new IllegalStateException("Storage unavailable");
+      })
+      .build());
+
+    var exception = assertThrows(IllegalStateException.class, trainer::fit);
+    assertEquals("Storage unavailable", exception.getCause().getMessage());
+  }
+
+
+  @Test
+  void invalidPrefetchRejected() {
+    var spec = spec(new ListDataSetIterator<>(batches(), BATCH_SIZE))
+      .prefetchBatches(-1)
+      .build();
+
+    var exception = assertThrows(IllegalArgumentException.class, () -> trainerBuilder.trainer(spec));
+    assertEquals("Cannot prefetch -1 batches", exception.getMessage());
+  }
+
+  private NetworkTrainerSpecification.NetworkTrainerSpecificationBuilder spec(
+    DataSetIterator trainingData) {
+    return NetworkTrainerSpecification.builder()
+      .compNetworkConfiguration(ExampleNetworks.feedForwardConfiguration(SMALL_SHAPE, 10))
+      .trainingData(trainingData)
+      .maxTime(1L)
+      .maxTimeUnit(TimeUnit.MINUTES);
+  }
+
+  private List<DataSet> batches() {
+    var random = new Random(1);
+    var batches = new ArrayList<DataSet>();
+    for (int b = 0; b < BATCHES; b++) {
+      var points = new ArrayList<LabeledDataPoint>();
+      for (int i = 0; i < BATCH_SIZE; i++) {
+        points.add(new LabeledDataPoint(ExampleNetworks.randomPoint(SMALL_SHAPE, random).getInputData3d(),
+          NeuralDataUtils.toLabelProbabilityArray(random.nextInt(4), 4)));
+      }
+      batches.add(new LabeledDataSet(points).getDataSet());
+    }
+    return batches;
+  }
+}
@@ -1,16 +1,28 @@
 package dev.jamesleach.neural.net;
 
 import com.google.common.util.concurrent.UncheckedExecutionException;
+import dev.jamesleach.neural.data.ClassificationOutput;
 import dev.jamesleach.neural.data.DataShape;
+import dev.jamesleach.neural.data.InputBuffer;
 import dev.jamesleach.neural.data.UnlabeledDataPoint;
 import org.junit.Assert;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.nd4j.linalg.api.buffer.DataType;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static dev.jamesleach.neural.net.ExampleNetworks.SMALL_SHAPE;
+
+import static org.mockito.Mockito.*;
 
 class TestSavedNetworkRunner {
   private final NetworkLoader networkLoader = mock(NetworkLoader.class);
@@ -28,4 +40,216 @@ class TestSavedNetworkRunner {
 
     Assertions.assertEquals("No network found for id 'id'", exception.getCause().getMessage());
   }
+
+
+  @Test
+  void batchMatchesSingleClassifications() {
+    when(networkLoader.load("id")).thenReturn(Optional.of(
+      ExampleNetworks.serializedFeedForward("id", SMALL_SHAPE, 10)));
+    var random = new Random(1);
+    var points = List.of(
+      ExampleNetworks.randomPoint(SMALL_SHAPE, random),
+      ExampleNetworks.randomPoint(SMALL_SHAPE, random),
+      ExampleNetworks.randomPoint(SMALL_SHAPE, random));
+
+    var outputs = savedNetworkRunner.runClassificationBatch("id", points);
+
+    Assertions.assertEquals(3, outputs.size());
+    for (int i = 0; i < points.size(); i++) {
+      var single = savedNetworkRunner.runClassification("id", points.get(i));
+      Assertions.assertEquals(single.getLabelIndex(), outputs.get(i).getLabelIndex());
+      Assertions.assertArrayEquals(single.getLabelProbabilities(), outputs.get(i).getLabelProbabilities(), 1e-5);
+    }
+    Assertions.assertTrue(savedNetworkRunner.runClassificationBatch("id", List.of()).isEmpty());
+  }
+
+  @Test
+  void batchWithWrongShapeRejected() {
+    when(networkLoader.load("id")).thenReturn(Optional.of(
+      ExampleNetworks.serializedFeedForward("id", SMALL_SHAPE, 10)));
+    var random = new Random(1);
+    var wrongShape = new DataShape(3, 4, 3, 2, 1);
+    var points = List.of(
+      ExampleNetworks.randomPoint(SMALL_SHAPE, random),
+      ExampleNetworks.randomPoint(wrongShape, random));
+
+    var exception = Assert.assertThrows(IllegalArgumentException.class, () ->
+      savedNetworkRunner.runClassificationBatch("id", points));
+
+    Assertions.assertTrue(exception.getMessage().startsWith("Data point 1 has shape"));
+  }
+
+
+  @Test
+  void reducedPrecisionCloseToSaved() {
+    when(networkLoader.load("id")).thenReturn(Optional.of(
+      ExampleNetworks.serializedFeedForward("id", SMALL_SHAPE, 10)));
+    var saved = new SavedNetworkRunner(networkLoader, networkSerializer, NetworkRunnerSpecification.builder()
+      .replicasPerNetwork(1)
+      .denseEngineEnabled(false)
+      .build());
+    var reduced = new SavedNetworkRunner(networkLoader, networkSerializer, NetworkRunnerSpecification.builder()
+      .replicasPerNetwork(1)
+      .inferenceDataType(DataType.HALF)
+      .quantizeInt8(true)
+      .build());
+    var point = ExampleNetworks.randomPoint(SMALL_SHAPE, new Random(1));
+
+    var expected = saved.runClassification("id", point);
+    var actual = reduced.runClassification("id", point);
+
+    Assertions.assertArrayEquals(expected.getLabelProbabilities(), actual.getLabelProbabilities(), 0.02);
+    Assertions.assertTrue(reduced.getCacheStats().getEstimatedBytes() * 2 <= saved.getCacheStats().getEstimatedBytes());
+  }
+
+
+  @Test
+  void newVersionSwappedInBackground() throws Exception {
+    var runner = new SavedNetworkRunner(networkLoader, networkSerializer, NetworkRunnerSpecification.builder()
+      .refreshInterval(Duration.ofMillis(50))
+      .build());
+    var point = ExampleNetworks.randomPoint(SMALL_SHAPE, new Random(1));
+    var original = ExampleNetworks.serializedFeedForward("id", SMALL_SHAPE, 10);
+    var retrained = ExampleNetworks.serializedFeedForward("id", SMALL_SHAPE, 20);
+    when(networkLoader.version("id")).thenReturn(Optional.of("v1"));
+    when(networkLoader.load("id")).thenReturn(Optional.of(original));
+
+    var before = runner.runClassification("id", point);
+
+    // Same version, nothing reloaded
+    Thread.sleep(100);
+    runner.runClassification("id", point);
+    Thread.sleep(100);
+    verify(networkLoader, times(1)).load("id");
+
+    // New version is loaded in the background while the old network keeps serving
+    when(networkLoader.version("id")).thenReturn(Optional.of("v2"));
+    when(networkLoader.load("id")).thenReturn(Optional.of(retrained));
+    Thread.sleep(100);
+    Assertions.assertArrayEquals(before.getLabelProbabilities(),
+      runner.runClassification("id", point).getLabelProbabilities());
+    var deadline = System.currentTimeMillis() + 10_000;
+    ClassificationOutput after;
+    do {
+      Thread.sleep(20);
+      after = runner.runClassification("id", point);
+    } while (Arrays.equals(before.getLabelProbabilities(), after.getLabelProbabilities())
+      && System.currentTimeMillis() < deadline);
+
+    Assertions.assertFalse(Arrays.equals(before.getLabelProbabilities(), after.getLabelProbabilities()));
+    verify(networkLoader, times(2)).load("id");
+    var stats = runner.getCacheStats();
+    Assertions.assertEquals(1, stats.getSize());
+    Assertions.assertEquals(1, stats.getMissCount());
+    Assertions.assertTrue(stats.getHitCount() >= 3);
+  }
+
+
+  @Test
+  void unchangedVersionKeepsServing() throws Exception {
+    var runner = new SavedNetworkRunner(networkLoader, networkSerializer, NetworkRunnerSpecification.builder()
+      .refreshInterval(Duration.ofMillis(20))
+      .denseEngineEnabled(false)
+      .build());
+    var point = ExampleNetworks.randomPoint(SMALL_SHAPE, new Random(1));
+    when(networkLoader.version("id")).thenReturn(Optional.of("v1"));
+    when(networkLoader.load("id")).thenReturn(Optional.of(ExampleNetworks.serializedFeedForward("id", SMALL_SHAPE, 10)));
+
+    var before = runner.runClassification("id", point);
+    long networkBytes = runner.getCacheStats().getEstimatedBytes();
+
+    // Several refreshes, each replacing the cached holder
+    for (int i = 0; i < 5; i++) {
+      Thread.sleep(40);
+      Assertions.assertArrayEquals(before.getLabelProbabilities(),
+        runner.runClassification("id", point).getLabelProbabilities());
+    }
+    verify(networkLoader, times(1)).load("id");
+    Assertions.assertEquals(networkBytes, runner.getCacheStats().getEstimatedBytes());
+
+    runner.close();
+    Assertions.assertEquals(0, runner.getCacheStats().getEstimatedBytes());
+  }
+
+
+  @Test
+  void reweighedAsReplicasCreated() throws Exception {
+    when(networkLoader.load("id")).thenReturn(Optional.of(
+      ExampleNetworks.serializedFeedForward("id", SMALL_SHAPE, 100)));
+    var runner = new SavedNetworkRunner(networkLoader, networkSerializer, NetworkRunnerSpecification.builder()
+      .replicasPerNetwork(4)
+      .denseEngineEnabled(false)
+      .build());
+    var input = new InputBuffer(SMALL_SHAPE, 64);
+    runner.runClassificationBatch("id", input);
+    long replicaBytes = runner.getCacheStats().getEstimatedBytes();
+
+    // Concurrent requests until a second replica is needed
+    var executor = Executors.newFixedThreadPool(8);
+    var deadline = System.currentTimeMillis() + 10_000;
+    try {
+      while (runner.getCacheStats().getEstimatedBytes() == replicaBytes && System.currentTimeMillis() < deadline) {
+        var futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < 32; i++) {
+          futures.add(executor.submit(() -> runner.runClassificationBatch("id", input)));
+        }
+        for (var future : futures) {
+          future.get(30, TimeUnit.SECONDS);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    long bytes = runner.getCacheStats().getEstimatedBytes();
+    Assertions.assertTrue(bytes > replicaBytes && bytes <= 4 * replicaBytes);
+    Assertions.assertEquals(0, bytes % replicaBytes);
+    Assertions.assertEquals(1, runner.getCacheStats().getSize());
+    runner.close();
+    Assertions.assertEquals(0, runner.getCacheStats().getEstimatedBytes());
+  }
+
+
+  @Test
+  void leastRecentlyUsedEvictedOverMemoryBudget() {
+    when(networkLoader.load("a")).thenReturn(Optional.of(ExampleNetworks.serializedFeedForward("a", SMALL_SHAPE, 100)));
+    when(networkLoader.load("b")).thenReturn(Optional.of(ExampleNetworks.serializedFeedForward("b", SMALL_SHAPE, 100)));
+    var point = ExampleNetworks.randomPoint(SMALL_SHAPE, new Random(1));
+
+    savedNetworkRunner.runClassification("a", point);
+    long networkBytes = savedNetworkRunner.getCacheStats().getEstimatedBytes();
+    Assertions.assertTrue(networkBytes > 0);
+
+    // Room for one and a half networks
+    var runner = new SavedNetworkRunner(networkLoader, networkSerializer, NetworkRunnerSpecification.builder()
+      .maxCacheBytes(networkBytes * 3 / 2)
+      .build());
+    runner.runClassification("a", point);
+    runner.runClassification("b", point);
+    var stats = runner.getCacheStats();
+    Assertions.assertEquals(1, stats.getSize());
+    Assertions.assertEquals(1, stats.getEvictionCount());
+    Assertions.assertEquals(networkBytes, stats.getEstimatedBytes());
+
+    runner.runClassification("b", point);
+    runner.runClassification("a", point);
+    stats = runner.getCacheStats();
+    Assertions.assertEquals(3, stats.getMissCount());
+    Assertions.assertEquals(2, stats.getEvictionCount());
+  }
+
+
+  @Test
+  void closeDropsCachedNetworks() {
+    when(networkLoader.load("id")).thenReturn(Optional.of(
+      ExampleNetworks.serializedFeedForward("id", SMALL_SHAPE, 10)));
+    var point = ExampleNetworks.randomPoint(SMALL_SHAPE, new Random(1));
+    savedNetworkRunner.runClassification("id", point);
+
+    savedNetworkRunner.close();
+
+    var stats = savedNetworkRunner.getCacheStats();
+    Assertions.assertEquals(0, stats.getSize());
+    Assertions.assertEquals(0, stats.getEstimatedBytes());
+  }
 }
@@ -0,0 +1,93 @@
+package dev.jamesleach.neural.net;
+
+import dev.jamesleach.neural.data.DataShape;
+import dev.jamesleach.neural.data.UnlabeledDataPoint;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import org.deeplearning4j.nn.api.OptimizationAlgorithm;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.Random;
+
+/**
+ * Small, untrained networks and inputs for tests.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class ExampleNetworks {
+  /**
+   * 2x4x1 input with 4 labels.
+   */
+  public static final DataShape SMALL_SHAPE = new DataShape(3, 4, 4, 2, 1);
+
+  /**
+   * Dense(ReLU) -> softmax output network accepting a convolution-style input.
+   */
+  public static ComputationGraphConfiguration feedForwardConfiguration(DataShape shape, int hiddenSize) {
+    return new NeuralNetConfiguration.Builder()
+      .seed(1234)
+      .optimizationAlgo(OptimizationAlgorithm.STOCHASTIC_GRADIENT_DESCENT)
+      .updater(new Adam(CommonNetSpecification.DEFAULT_LEARNING_RATE))
+      .graphBuilder()
+      .addInputs("input")
+      .setInputTypes(InputType.convolutional(
+        shape.getHeight(),
+        shape.getLength(),
+        shape.getDepth()))
+      .addLayer("hidden",
+        new DenseLayer.Builder()
+          .activation(Activation.RELU)
+          .weightInit(WeightInit.XAVIER)
+          .nOut(hiddenSize)
+          .build(),
+        "input")
+      .addLayer("output",
+        new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT)
+          .activation(Activation.SOFTMAX)
+          .weightInit(WeightInit.XAVIER)
+          .nOut(shape.getNumLabels())
+          .build(),
+        "hidden")
+      .setOutputs("output")
+      .build();
+  }
+
+  /**
+   * Initialised (random weight) feed-forward network.
+   */
+  public static ComputationGraph feedForward(DataShape shape, int hiddenSize) {
+    var graph = new ComputationGraph(feedForwardConfiguration(shape, hiddenSize));
+    graph.init();
+    return graph;
+  }
+
+  /**
+   * Initialised feed-forward network wrapped up as a {@link SerializedNetwork}.
+   */
+  public static SerializedNetwork serializedFeedForward(String id, DataShape shape, int hiddenSize) {
+    return new SerializedNetwork(id, shape, new NetworkSerializer().serialize(feedForward(shape, hiddenSize)));
+  }
+
+  /**
+   * Data point with values uniformly distributed in [0, 1).
+   */
+  public static UnlabeledDataPoint randomPoint(DataShape shape, Random random) {
+    double[][][] data = new double[shape.getHeight()][shape.getLength()][shape.getDepth()];
+    for (int h = 0; h < shape.getHeight(); h++) {
+      for (int l = 0; l < shape.getLength(); l++) {
+        for (int d = 0; d < shape.getDepth(); d++) {
+          data[h][l][d] = random.nextDouble();
+        }
+      }
+    }
+    return new UnlabeledDataPoint(data, shape);
+  }
+}